@@ -68,7 +68,5 @@ dependencies {
     implementation("be.tarsos.dsp:core:2.5")
     implementation("be.tarsos.dsp:jvm:2.5")
 
-    implementation("org.apache.commons:commons-math3:3.6.1")
-
     implementation(libs.tasks.genai)
 }
@@ -1,12 +1,31 @@
 package com.example.myapplication;
 
 import android.app.Application;
+import com.example.myapplication.transcriptionService.WhisperModelManager;
 import com.google.android.material.color.DynamicColors;
 
 public class MyApplication extends Application {
+    // Seconds of audio per Whisper inference
+    private static final float WHISPER_INPUT_SECONDS = 30f;
+    // An unused Whisper model is released after 5 minutes
+    private static final long MODEL_IDLE_TIMEOUT_MS = 5 * 60 * 1000L;
+
+    private WhisperModelManager whisperModelManager;
+
     @Override
     public void onCreate() {
         super.onCreate();
         DynamicColors.applyToActivitiesIfAvailable(this);
+        whisperModelManager = new WhisperModelManager(this, WHISPER_INPUT_SECONDS, MODEL_IDLE_TIMEOUT_MS);
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        whisperModelManager.onTrimMemory(level);
+    }
+
+    public WhisperModelManager getWhisperModelManager() {
+        return whisperModelManager;
     }
-}
\ No newline at end of file
+}
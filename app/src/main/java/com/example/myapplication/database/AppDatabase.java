@@ -1,12 +1,28 @@
 package com.example.myapplication.database;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
-@Database(entities = {Ideas_table.class, Attachments_table.class}, version = 1)
+@Database(entities = {Ideas_table.class, Attachments_table.class, TranscriptionJobs_table.class}, version = 2)
 @TypeConverters({Converters.class})
 public abstract class AppDatabase extends RoomDatabase {
     public abstract IdeasDao ideasDao();
     public abstract AttachmentsDao attachmentsDao();
-}
\ No newline at end of file
+    public abstract TranscriptionJobsDao transcriptionJobsDao();
+
+    // Version 2 adds the transcription job queue
+    public static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `TranscriptionJobs` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`idea_id` INTEGER NOT NULL, `audio_file_path` TEXT, `priority` INTEGER NOT NULL, "
+                    + "`created_at` INTEGER, `attempts` INTEGER NOT NULL, "
+                    + "FOREIGN KEY(`idea_id`) REFERENCES `Ideas`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE )");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_TranscriptionJobs_idea_id` ON `TranscriptionJobs` (`idea_id`)");
+        }
+    };
+}
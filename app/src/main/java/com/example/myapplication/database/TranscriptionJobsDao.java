@@ -0,0 +1,44 @@
+package com.example.myapplication.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface TranscriptionJobsDao {
+    // Returns -1 if the idea already has a job
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insert(TranscriptionJobs_table job);
+
+    @Query("SELECT * FROM TranscriptionJobs WHERE attempts < :maxAttempts ORDER BY priority DESC, created_at ASC, id ASC LIMIT 1")
+    TranscriptionJobs_table getNext(int maxAttempts);
+
+    @Query("SELECT COUNT(*) FROM TranscriptionJobs WHERE attempts < :maxAttempts")
+    int countPending(int maxAttempts);
+
+    @Query("SELECT * FROM TranscriptionJobs WHERE attempts < :maxAttempts ORDER BY priority DESC, created_at ASC, id ASC")
+    List<TranscriptionJobs_table> getPending(int maxAttempts);
+
+    // Jobs that used up their attempts are not counted, they are about to be dropped
+    @Query("SELECT COUNT(*) FROM TranscriptionJobs WHERE idea_id = :ideaId AND attempts < :maxAttempts")
+    int countForIdea(int ideaId, int maxAttempts);
+
+    @Query("SELECT * FROM TranscriptionJobs WHERE attempts >= :maxAttempts")
+    List<TranscriptionJobs_table> getExhausted(int maxAttempts);
+
+    // Queuing an idea again gives a job that used up its attempts a new start
+    @Query("UPDATE TranscriptionJobs SET attempts = 0 WHERE idea_id = :ideaId AND attempts >= :maxAttempts")
+    void resetExhausted(int ideaId, int maxAttempts);
+
+    @Query("UPDATE TranscriptionJobs SET priority = :priority WHERE idea_id = :ideaId AND priority < :priority")
+    void raisePriority(int ideaId, int priority);
+
+    @Query("UPDATE TranscriptionJobs SET attempts = attempts + 1 WHERE id = :id")
+    void markStarted(int id);
+
+    @Query("DELETE FROM TranscriptionJobs WHERE id = :id")
+    void delete(int id);
+}
@@ -0,0 +1,31 @@
+package com.example.myapplication.database;
+
+import androidx.room.Entity;
+import androidx.room.ForeignKey;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+import java.util.Date;
+
+@Entity (tableName = "TranscriptionJobs", foreignKeys = @ForeignKey(entity = Ideas_table.class, parentColumns = "id", childColumns = "idea_id", onDelete = ForeignKey.CASCADE), indices = {@Index(value = "idea_id", unique = true)})
+public class TranscriptionJobs_table {
+    // Jobs for the idea open in the detail screen go first
+    public static final int PRIORITY_BACKGROUND = 0;
+    public static final int PRIORITY_OPEN = 1;
+    // A job that was started this often without finishing is given up
+    public static final int MAX_ATTEMPTS = 3;
+
+    @PrimaryKey(autoGenerate = true)
+    public int id;
+
+    public int idea_id;
+
+    public String audio_file_path;
+
+    public int priority;
+
+    public Date created_at;
+
+    // Incremented when the job starts, so a job that crashes the app is not retried forever
+    public int attempts;
+}
@@ -0,0 +1,297 @@
+package com.example.myapplication.recording;
+
+import android.Manifest;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaCodec;
+import android.media.MediaCodecInfo;
+import android.media.MediaFormat;
+import android.media.MediaMuxer;
+import android.media.MediaRecorder;
+import android.util.Log;
+
+import androidx.annotation.RequiresPermission;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records speech the way the transcription model consumes it: 16 kHz mono 16-bit PCM from
+ * AudioRecord. The PCM is encoded to a small AAC .m4a for playback and can additionally be
+ * written unchanged to a raw sidecar file next to it, which the transcription service maps
+ * into memory instead of decoding and resampling the .m4a. The sidecar is written under a
+ * temporary name and only renamed once the recording has stopped cleanly, so a recording
+ * cut short by a crash or an error has no sidecar that could be shorter than the .m4a.
+ */
+public class SpeechRecorder {
+    private static final String TAG = "SpeechRecorder";
+
+    public static final int SAMPLE_RATE = 16000;
+    // Plenty for 16 kHz mono speech, compared to 705 kbps for the old 44.1 kHz profile
+    private static final int AAC_BIT_RATE = 32000;
+    private static final long TIMEOUT_US = 10000;
+    // Suffix of the sidecar while it is being written
+    private static final String PARTIAL_SUFFIX = ".part";
+
+    private final String audioFilePath;
+    private final String pcmFilePath;
+
+    private AudioRecord audioRecord;
+    private MediaCodec encoder;
+    private MediaMuxer muxer;
+    private FileChannel pcmChannel;
+    private Thread recordingThread;
+    private volatile boolean recording;
+
+    private int trackIndex = -1;
+    private boolean muxerStarted;
+    private long samplesEncoded;
+    // Set by the recording thread, read after it has been joined
+    private Exception recordingError;
+    private final MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+
+    /**
+     * @param audioFilePath path of the .m4a file to create
+     * @param writePcmSidecar also keep the raw PCM in {@link #sidecarPath(String)}
+     */
+    public SpeechRecorder(String audioFilePath, boolean writePcmSidecar) {
+        this.audioFilePath = audioFilePath;
+        this.pcmFilePath = writePcmSidecar ? sidecarPath(audioFilePath) : null;
+    }
+
+    /**
+     * Path of the raw PCM sidecar belonging to a recording, 16 kHz mono 16-bit little-endian
+     * samples without a header.
+     *
+     * @param audioFilePath path of the m4a recording
+     * @return path of its sidecar next to it
+     */
+    public static String sidecarPath(String audioFilePath) {
+        return audioFilePath.replace("_audio.m4a", "_audio.pcm");
+    }
+
+    @RequiresPermission(Manifest.permission.RECORD_AUDIO)
+    public void start() throws IOException {
+        int minBufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        // At least 100 ms of audio so the encoder can fall briefly behind
+        int bufferSize = Math.max(minBufferSize, SAMPLE_RATE / 10 * 2);
+
+        audioRecord = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSize);
+        if (audioRecord.getState() != AudioRecord.STATE_INITIALIZED) {
+            audioRecord.release();
+            audioRecord = null;
+            throw new IOException("AudioRecord could not be initialized");
+        }
+
+        MediaFormat format = MediaFormat.createAudioFormat(MediaFormat.MIMETYPE_AUDIO_AAC, SAMPLE_RATE, 1);
+        format.setInteger(MediaFormat.KEY_AAC_PROFILE, MediaCodecInfo.CodecProfileLevel.AACObjectLC);
+        format.setInteger(MediaFormat.KEY_BIT_RATE, AAC_BIT_RATE);
+        format.setInteger(MediaFormat.KEY_MAX_INPUT_SIZE, bufferSize);
+
+        encoder = MediaCodec.createEncoderByType(MediaFormat.MIMETYPE_AUDIO_AAC);
+        encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE);
+        muxer = new MediaMuxer(audioFilePath, MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4);
+        if (pcmFilePath != null) {
+            pcmChannel = new FileOutputStream(pcmFilePath + PARTIAL_SUFFIX).getChannel();
+        }
+
+        encoder.start();
+        audioRecord.startRecording();
+        recording = true;
+
+        recordingThread = new Thread(() -> recordLoop(bufferSize), "SpeechRecorder");
+        recordingThread.start();
+        Log.d(TAG, "Recording 16 kHz mono to " + audioFilePath
+                + (pcmFilePath != null ? " with PCM sidecar" : ""));
+    }
+
+    /**
+     * Stops recording and finalizes the files. Throws a RuntimeException, like MediaRecorder,
+     * if nothing was recorded.
+     */
+    public void stop() {
+        recording = false;
+        try {
+            recordingThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        boolean hasAudio = muxerStarted;
+        release();
+        commitSidecar(recordingError == null && hasAudio);
+        if (recordingError != null) {
+            throw new RuntimeException("Recording failed", recordingError);
+        }
+        if (!hasAudio) {
+            throw new IllegalStateException("No audio data recorded");
+        }
+        Log.d(TAG, String.format("Recorded %.2f seconds", samplesEncoded / (float) SAMPLE_RATE));
+    }
+
+    /**
+     * Stops a running recording and frees the recorder, encoder, muxer and sidecar file.
+     */
+    public void release() {
+        recording = false;
+        if (recordingThread != null && recordingThread.isAlive()) {
+            try {
+                recordingThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (audioRecord != null) {
+            audioRecord.release();
+            audioRecord = null;
+        }
+        if (encoder != null) {
+            encoder.release();
+            encoder = null;
+        }
+        if (muxer != null) {
+            if (muxerStarted) {
+                try {
+                    muxer.stop();
+                } catch (IllegalStateException e) {
+                    Log.e(TAG, "Error finalizing recording", e);
+                }
+                muxerStarted = false;
+            }
+            muxer.release();
+            muxer = null;
+        }
+        if (pcmChannel != null) {
+            try {
+                pcmChannel.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing PCM sidecar", e);
+            }
+            pcmChannel = null;
+        }
+    }
+
+    /**
+     * Deletes the recording and its sidecar, used when a recording is discarded.
+     */
+    public void deleteFiles() {
+        new File(audioFilePath).delete();
+        if (pcmFilePath != null) {
+            new File(pcmFilePath).delete();
+            new File(pcmFilePath + PARTIAL_SUFFIX).delete();
+        }
+    }
+
+    /**
+     * Gives the written sidecar its final name if the recording is complete, and deletes it
+     * otherwise.
+     *
+     * @param complete whether the recording stopped without an error
+     */
+    private void commitSidecar(boolean complete) {
+        if (pcmFilePath == null) {
+            return;
+        }
+        File partial = new File(pcmFilePath + PARTIAL_SUFFIX);
+        if (!complete || !partial.renameTo(new File(pcmFilePath))) {
+            partial.delete();
+        }
+    }
+
+    private void recordLoop(int bufferSize) {
+        ByteBuffer pcm = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (recording) {
+                pcm.clear();
+                int read = audioRecord.read(pcm, bufferSize, AudioRecord.READ_BLOCKING);
+                if (read <= 0) {
+                    continue;
+                }
+                pcm.limit(read);
+
+                if (pcmChannel != null) {
+                    while (pcm.hasRemaining()) {
+                        pcmChannel.write(pcm);
+                    }
+                    pcm.flip();
+                }
+                queueInput(pcm, false);
+                drainEncoder(false);
+            }
+            audioRecord.stop();
+
+            queueInput(null, true);
+            drainEncoder(true);
+        } catch (IOException | RuntimeException e) {
+            // MediaCodec and MediaMuxer fail with IllegalStateException or CodecException, the
+            // muxer is still finalized by release() and stop() reports the error
+            Log.e(TAG, "Error writing recording", e);
+            recordingError = e;
+            recording = false;
+        }
+    }
+
+    private void queueInput(ByteBuffer pcm, boolean endOfStream) {
+        while (true) {
+            int inIndex = encoder.dequeueInputBuffer(TIMEOUT_US);
+            if (inIndex < 0) {
+                // Make room by taking encoded output off the encoder
+                drainEncoder(false);
+                continue;
+            }
+            long presentationTimeUs = samplesEncoded * 1_000_000L / SAMPLE_RATE;
+            if (endOfStream) {
+                encoder.queueInputBuffer(inIndex, 0, 0, presentationTimeUs,
+                        MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                return;
+            }
+
+            ByteBuffer input = encoder.getInputBuffer(inIndex);
+            int count = Math.min(input.remaining(), pcm.remaining());
+            ByteBuffer slice = pcm.duplicate();
+            slice.limit(slice.position() + count);
+            input.put(slice);
+            pcm.position(pcm.position() + count);
+
+            encoder.queueInputBuffer(inIndex, 0, count, presentationTimeUs, 0);
+            samplesEncoded += count / 2;
+            if (!pcm.hasRemaining()) {
+                return;
+            }
+        }
+    }
+
+    private void drainEncoder(boolean endOfStream) {
+        while (true) {
+            int outIndex = encoder.dequeueOutputBuffer(info, endOfStream ? TIMEOUT_US : 0);
+            if (outIndex == MediaCodec.INFO_TRY_AGAIN_LATER) {
+                if (!endOfStream) {
+                    return;
+                }
+            } else if (outIndex == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                trackIndex = muxer.addTrack(encoder.getOutputFormat());
+                muxer.start();
+                muxerStarted = true;
+            } else if (outIndex >= 0) {
+                ByteBuffer output = encoder.getOutputBuffer(outIndex);
+                boolean isConfig = (info.flags & MediaCodec.BUFFER_FLAG_CODEC_CONFIG) != 0;
+                if (!isConfig && info.size > 0 && muxerStarted) {
+                    output.position(info.offset);
+                    output.limit(info.offset + info.size);
+                    muxer.writeSampleData(trackIndex, output, info);
+                }
+                encoder.releaseOutputBuffer(outIndex, false);
+
+                if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                    return;
+                }
+            }
+        }
+    }
+}
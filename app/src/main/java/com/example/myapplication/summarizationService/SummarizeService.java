@@ -202,7 +202,8 @@ public class SummarizeService extends Service {
     private void saveSummary(String summary) {
         updateNotification("Saving transcription...");
 
-        AppDatabase db = Room.databaseBuilder(getApplicationContext(), AppDatabase.class, "app-database").build();
+        AppDatabase db = Room.databaseBuilder(getApplicationContext(), AppDatabase.class, "app-database")
+                .addMigrations(AppDatabase.MIGRATION_1_2).build();
         IdeasDao ideasDao = db.ideasDao();
 
         summaryFilePath = textFilePath.replace("texts", "summaries")
@@ -0,0 +1,281 @@
+package com.example.myapplication.transcriptionService;
+
+import android.media.AudioFormat;
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decodes an audio track with MediaCodec in asynchronous mode. The codec callbacks run on a
+ * dedicated HandlerThread, feed the extractor's samples in as soon as an input buffer is
+ * free and downmix every output buffer straight into a pooled mono block. Blocks are handed
+ * to the consumer through a bounded queue, so decoding runs ahead of resampling and feature
+ * extraction by at most a few blocks and then waits.
+ */
+public class AsyncAudioDecoder implements AutoCloseable {
+    private static final String TAG = "AsyncAudioDecoder";
+    // How often a producer blocked on a full queue checks whether the decoder was closed
+    private static final long OFFER_TIMEOUT_MS = 50;
+
+    /**
+     * Mono float samples decoded from one codec output buffer.
+     */
+    public static final class PcmBlock {
+        float[] samples = new float[0];
+        int length;
+        // Set on the block that marks the end of the stream or a decoding error
+        boolean endOfStream;
+        Exception error;
+    }
+
+    private final MediaExtractor extractor;
+    private final MediaCodec codec;
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final PcmDownmixer downmixer = new PcmDownmixer();
+
+    private final BlockingQueue<PcmBlock> decoded;
+    private final BlockingQueue<PcmBlock> pool;
+
+    private volatile boolean closed;
+    private boolean inputDone;
+    private boolean finished;
+
+    /**
+     * Starts decoding the extractor's selected track right away.
+     *
+     * @param extractor with the audio track selected
+     * @param format the track's format
+     * @param queueCapacity number of decoded blocks that may wait for the consumer
+     * @throws IOException if no decoder for the track's MIME type can be created
+     */
+    public AsyncAudioDecoder(MediaExtractor extractor, MediaFormat format, int queueCapacity)
+            throws IOException {
+        this.extractor = extractor;
+        this.decoded = new ArrayBlockingQueue<>(queueCapacity + 1);
+        // One block more than the queue holds is being filled or read at any time
+        this.pool = new ArrayBlockingQueue<>(queueCapacity + 2);
+        for (int i = 0; i < queueCapacity + 2; i++) {
+            pool.add(new PcmBlock());
+        }
+
+        downmixer.setFormat(AudioFormat.ENCODING_PCM_16BIT, format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+
+        thread = new HandlerThread("AudioDecoder");
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        try {
+            codec = MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME));
+        } catch (IOException | RuntimeException e) {
+            thread.quitSafely();
+            throw e;
+        }
+        try {
+            // The callback has to be set before configure() to put the codec in async mode
+            codec.setCallback(new Callback(), handler);
+            codec.configure(format, null, null, 0);
+            codec.start();
+        } catch (RuntimeException e) {
+            // Releases the codec on the handler thread and ends the thread
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the next decoded block. The block must be given back with recycle() once it
+     * has been consumed.
+     *
+     * @return the next block, or null at the end of the stream
+     * @throws IOException if decoding failed
+     */
+    public PcmBlock take() throws IOException {
+        if (finished) {
+            return null;
+        }
+        PcmBlock block;
+        try {
+            block = decoded.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for decoded audio", e);
+        }
+
+        if (block.error != null || block.endOfStream) {
+            finished = true;
+            Exception error = block.error;
+            recycle(block);
+            if (error != null) {
+                throw new IOException("Error decoding audio", error);
+            }
+            return null;
+        }
+        return block;
+    }
+
+    public void recycle(PcmBlock block) {
+        block.length = 0;
+        block.endOfStream = false;
+        block.error = null;
+        pool.offer(block);
+    }
+
+    private class Callback extends MediaCodec.Callback {
+        @Override
+        public void onInputBufferAvailable(@NonNull MediaCodec codec, int index) {
+            if (closed || inputDone) {
+                return;
+            }
+            ByteBuffer buffer = codec.getInputBuffer(index);
+            int sampleSize = extractor.readSampleData(buffer, 0);
+            if (sampleSize < 0) {
+                codec.queueInputBuffer(index, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                inputDone = true;
+            } else {
+                codec.queueInputBuffer(index, 0, sampleSize, extractor.getSampleTime(), 0);
+                extractor.advance();
+            }
+        }
+
+        @Override
+        public void onOutputBufferAvailable(@NonNull MediaCodec codec, int index,
+                                            @NonNull MediaCodec.BufferInfo info) {
+            if (closed) {
+                return;
+            }
+            ByteBuffer buffer = codec.getOutputBuffer(index);
+            buffer.position(info.offset);
+            buffer.limit(info.offset + info.size);
+
+            if (info.size > 0) {
+                PcmBlock block = obtain();
+                if (block == null) {
+                    codec.releaseOutputBuffer(index, false);
+                    return;
+                }
+                int frames = downmixer.frameCount(buffer);
+                if (block.samples.length < frames) {
+                    block.samples = new float[frames];
+                }
+                block.length = downmixer.convert(buffer, block.samples);
+                codec.releaseOutputBuffer(index, false);
+                deliver(block);
+            } else {
+                codec.releaseOutputBuffer(index, false);
+            }
+
+            if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
+                PcmBlock end = obtain();
+                if (end != null) {
+                    end.endOfStream = true;
+                    deliver(end);
+                }
+            }
+        }
+
+        @Override
+        public void onError(@NonNull MediaCodec codec, @NonNull MediaCodec.CodecException e) {
+            Log.e(TAG, "Decoder error", e);
+            PcmBlock block = obtain();
+            if (block != null) {
+                block.error = e;
+                deliver(block);
+            }
+        }
+
+        @Override
+        public void onOutputFormatChanged(@NonNull MediaCodec codec, @NonNull MediaFormat format) {
+            int encoding = format.containsKey(MediaFormat.KEY_PCM_ENCODING)
+                    ? format.getInteger(MediaFormat.KEY_PCM_ENCODING)
+                    : AudioFormat.ENCODING_PCM_16BIT;
+            Log.d(TAG, "Decoder output format: " + format);
+            try {
+                downmixer.setFormat(encoding, format.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+            } catch (IllegalArgumentException e) {
+                // Report to the reader instead of crashing the decoder thread
+                closed = true;
+                PcmBlock block = pool.poll();
+                if (block != null) {
+                    block.error = e;
+                    decoded.offer(block);
+                }
+            }
+        }
+    }
+
+    /**
+     * Takes a free block from the pool, waiting while the consumer still holds all of them.
+     *
+     * @return the block, or null if the decoder was closed meanwhile
+     */
+    private PcmBlock obtain() {
+        try {
+            while (!closed) {
+                PcmBlock block = pool.poll(OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (block != null) {
+                    return block;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+
+    private void deliver(PcmBlock block) {
+        try {
+            while (!closed) {
+                if (decoded.offer(block, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops decoding and waits for the decoder thread to end. The codec is stopped and
+     * released on that thread, after any callback still running there has returned, so no
+     * callback touches a released codec or extractor. The extractor may be released once
+     * this returns.
+     */
+    @Override
+    public void close() {
+        // Callbacks waiting on the queue or the pool give up within OFFER_TIMEOUT_MS
+        closed = true;
+        handler.post(() -> {
+            try {
+                codec.stop();
+            } catch (IllegalStateException e) {
+                Log.e(TAG, "Error stopping decoder", e);
+            } finally {
+                codec.release();
+            }
+        });
+        // Runs the release posted above before the looper ends
+        thread.quitSafely();
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.myapplication.transcriptionService;
+
+/**
+ * View of one chunk of a recording inside a shared sample buffer. The samples are
+ * buffer[offset, offset + length) and are only valid until the chunker produces the next
+ * chunk, which reuses the buffer.
+ */
+public final class AudioChunk {
+    private final float[] buffer;
+    private final int offset;
+    private final int length;
+    private final int overlap;
+    private final long startSample;
+    private final int index;
+
+    AudioChunk(float[] buffer, int offset, int length, int overlap, long startSample, int index) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+        this.overlap = overlap;
+        this.startSample = startSample;
+        this.index = index;
+    }
+
+    public float[] getBuffer() {
+        return buffer;
+    }
+
+    public int getOffset() {
+        return offset;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Number of samples at the start of the chunk that were also part of the previous
+     * chunk, 0 for the first chunk and after a cut in a pause.
+     *
+     * @return overlapping samples at the start
+     */
+    public int getOverlap() {
+        return overlap;
+    }
+
+    /**
+     * Position of the chunk's first sample in the recording.
+     *
+     * @return sample index at the source's sample rate
+     */
+    public long getStartSample() {
+        return startSample;
+    }
+
+    public int getIndex() {
+        return index;
+    }
+}
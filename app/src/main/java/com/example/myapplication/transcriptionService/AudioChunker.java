@@ -0,0 +1,125 @@
+package com.example.myapplication.transcriptionService;
+
+import java.io.IOException;
+
+/**
+ * Cuts a PCM stream into chunks of at most chunkSamples while it is being decoded. Chunks
+ * are produced lazily, one per call, as {@link AudioChunk} views of a single chunk-sized
+ * buffer: after a chunk has been consumed only the samples the next chunk shares with it
+ * are moved to the front of the buffer and the rest is refilled from the source.
+ * Without a pause detector chunks start at multiples of (chunkSamples - overlapSamples) and
+ * overlap by overlapSamples. With one, a full chunk is instead cut in a pause found within
+ * its last overlapSamples, and the next chunk starts right there without overlap; when
+ * there is no pause the fixed overlap is used.
+ */
+public class AudioChunker {
+    private final PcmSource source;
+    private final int chunkSamples;
+    private final int stride;
+    private VoiceActivityDetector pauseDetector;
+
+    private final float[] buffer;
+    private int filled;
+    private boolean started;
+    private boolean endOfStream;
+    private long startSample;
+    private int chunkIndex = -1;
+
+    // Length of the current chunk, where the next one starts and how much they share
+    private int chunkLength;
+    private int advance;
+    private int overlapWithPrevious;
+
+    public AudioChunker(PcmSource source, int chunkSamples, int overlapSamples) {
+        if (overlapSamples < 0 || overlapSamples >= chunkSamples) {
+            throw new IllegalArgumentException("Overlap must be smaller than the chunk");
+        }
+        this.source = source;
+        this.chunkSamples = chunkSamples;
+        this.stride = chunkSamples - overlapSamples;
+        this.buffer = new float[chunkSamples];
+    }
+
+    /**
+     * Places chunk boundaries in pauses found by the detector, or at fixed strides when
+     * detector is null.
+     *
+     * @param detector detector to find pauses with, or null
+     */
+    public void setPauseDetector(VoiceActivityDetector detector) {
+        this.pauseDetector = detector;
+    }
+
+    /**
+     * Returns the next chunk, or null once the stream is exhausted. The last chunk, and
+     * chunks cut in a pause, can be shorter than chunkSamples. The previous chunk's samples
+     * are overwritten by this call.
+     *
+     * @return the next chunk, or null at the end of the stream
+     * @throws IOException if the source cannot be read
+     */
+    public AudioChunk nextChunk() throws IOException {
+        if (!started) {
+            started = true;
+            fill();
+            if (filled == 0) {
+                return null;
+            }
+            overlapWithPrevious = 0;
+        } else {
+            // Another chunk starts within the samples still buffered
+            if (filled <= advance) {
+                return null;
+            }
+            System.arraycopy(buffer, advance, buffer, 0, filled - advance);
+            filled -= advance;
+            startSample += advance;
+            overlapWithPrevious = chunkLength - advance;
+            fill();
+        }
+
+        chunkLength = filled;
+        advance = stride;
+        if (pauseDetector != null && filled == chunkSamples && !endOfStream) {
+            int cut = pauseDetector.findPause(buffer, stride, chunkSamples);
+            if (cut > 0) {
+                chunkLength = cut;
+                advance = cut;
+            }
+        }
+
+        chunkIndex++;
+        return new AudioChunk(buffer, 0, chunkLength, overlapWithPrevious, startSample, chunkIndex);
+    }
+
+    private void fill() throws IOException {
+        while (!endOfStream && filled < chunkSamples) {
+            int read = source.read(buffer, filled, chunkSamples - filled);
+            if (read < 0) {
+                endOfStream = true;
+            } else {
+                filled += read;
+            }
+        }
+    }
+
+    /**
+     * Number of chunks produced so far.
+     *
+     * @return chunks returned by nextChunk
+     */
+    public int getChunkCount() {
+        return chunkIndex + 1;
+    }
+
+    /**
+     * Number of chunks the recording will be split into with fixed strides, based on the
+     * source's expected length. Used for progress reporting before the stream has been read.
+     *
+     * @return estimated number of chunks, at least 1
+     */
+    public int getEstimatedChunkCount() {
+        long expected = source.getExpectedSamples();
+        return (int) Math.max(1, (expected + stride - 1) / stride);
+    }
+}
@@ -0,0 +1,223 @@
+package com.example.myapplication.transcriptionService;
+
+import android.util.Log;
+
+import java.nio.FloatBuffer;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Produces the model input for consecutive, overlapping audio chunks of one recording.
+ * Mel frames are kept in a rolling store keyed by their global frame index, so frames in
+ * the overlap between two chunks are copied from the previous chunk instead of being
+ * recomputed. Only the frames whose window reaches into a chunk's reflect padding depend
+ * on the chunk boundaries and are always computed again. Frames are stored as log-mel
+ * values, so the log is also taken only once per frame.
+ * Frame computation can optionally be spread over a ForkJoinPool; every worker thread gets
+ * its own FFT scratch space and the result is identical to the serial path.
+ */
+public class ChunkFeatureExtractor {
+    private static final String TAG = "ChunkFeatureExtractor";
+    // Smallest frame range worth handing to a separate task
+    private static final int MIN_FRAMES_PER_TASK = 64;
+
+    private final MelSpectrogram melSpectrogram;
+    private final LogMelNormalizer normalizer;
+    private final int n_fft;
+    private final int hop_length;
+    private final int nMels;
+    private final int nFramesOut;
+
+    // Log-mel values per local frame of the current chunk, frame-major [nFramesOut][nMels]
+    private final float[] frames;
+    private final float[] mel;
+
+    // Per-thread extractors for the parallel path, null while running serially
+    private ForkJoinPool pool;
+    private final ThreadLocal<MelSpectrogram> workerSpectrogram;
+    private final ThreadLocal<float[]> workerMel;
+
+    // Global frame index of local frame 0 of the previous chunk, and the global frame range
+    // of that chunk whose values do not depend on its padding
+    private long cachedStartFrame = -1;
+    private long cachedFrom = -1;
+    private long cachedTo = -1;
+
+    private long framesComputed;
+    private long framesReused;
+
+    public ChunkFeatureExtractor(MelFeatureConfig config, LogMelNormalizer normalizer, int nFramesOut) {
+        this.melSpectrogram = new MelSpectrogram(config);
+        this.normalizer = normalizer;
+        this.n_fft = config.getNFft();
+        this.hop_length = config.getHopLength();
+        this.nMels = config.getNMels();
+        this.nFramesOut = nFramesOut;
+        this.frames = new float[nFramesOut * nMels];
+        this.mel = new float[nMels];
+        this.workerSpectrogram = ThreadLocal.withInitial(() -> new MelSpectrogram(config));
+        this.workerMel = ThreadLocal.withInitial(() -> new float[config.getNMels()]);
+    }
+
+    /**
+     * Enables frame-parallel extraction on the given pool, or switches back to the serial
+     * path when pool is null.
+     *
+     * @param pool pool to split the frames over, or null
+     */
+    public void setParallelism(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Forgets cached frames, must be called before starting a new recording.
+     */
+    public void reset() {
+        cachedStartFrame = -1;
+        cachedFrom = -1;
+        cachedTo = -1;
+        framesComputed = 0;
+        framesReused = 0;
+    }
+
+    /**
+     * Computes the normalized log-mel input for a chunk straight from the chunker's buffer.
+     *
+     * @param chunk the chunk, valid until the next call of nextChunk
+     * @param out model input buffer, written from its start
+     * @return number of frames computed from the audio
+     */
+    public int extract(AudioChunk chunk, FloatBuffer out) {
+        return extract(chunk.getBuffer(), chunk.getOffset(), chunk.getLength(), chunk.getStartSample(), out);
+    }
+
+    /**
+     * Computes the normalized log-mel input for audio[offset, offset + length), which starts
+     * at startSample in the recording, and writes it into out as [n_mels][nFramesOut].
+     *
+     * @param audio samples at the model's sample rate
+     * @param offset first sample of the chunk in audio
+     * @param length number of samples in the chunk
+     * @param startSample position of the chunk's first sample in the recording
+     * @param out model input buffer, written from its start
+     * @return number of frames computed from the audio
+     */
+    public int extract(float[] audio, int offset, int length, long startSample, FloatBuffer out) {
+        final int nFrames = Math.min(melSpectrogram.frameCount(length), nFramesOut);
+
+        // Frames whose window lies fully inside the chunk are identical to the global ones
+        final int interiorFrom = (n_fft / 2 + hop_length - 1) / hop_length;
+        final int interiorTo = length >= n_fft / 2
+                ? Math.min(nFrames, (length - n_fft / 2) / hop_length + 1)
+                : 0;
+
+        int reuseFrom = 0;
+        int reuseTo = 0;
+        long startFrame = -1;
+        if (startSample % hop_length == 0) {
+            startFrame = startSample / hop_length;
+            if (cachedStartFrame >= 0) {
+                reuseFrom = (int) Math.max(interiorFrom, cachedFrom - startFrame);
+                reuseTo = (int) Math.min(interiorTo, cachedTo - startFrame);
+            }
+        }
+
+        if (reuseFrom < reuseTo) {
+            // Shift the overlapping frames of the previous chunk into place
+            int shift = (int) (startFrame - cachedStartFrame);
+            System.arraycopy(frames, (reuseFrom + shift) * nMels, frames, reuseFrom * nMels,
+                    (reuseTo - reuseFrom) * nMels);
+            framesReused += reuseTo - reuseFrom;
+        } else {
+            reuseFrom = 0;
+            reuseTo = 0;
+        }
+
+        computeFrames(audio, offset, length, 0, reuseFrom);
+        computeFrames(audio, offset, length, reuseTo, nFrames);
+
+        if (startFrame >= 0 && interiorFrom < interiorTo) {
+            cachedStartFrame = startFrame;
+            cachedFrom = startFrame + interiorFrom;
+            cachedTo = startFrame + interiorTo;
+        } else {
+            cachedStartFrame = -1;
+            cachedFrom = -1;
+            cachedTo = -1;
+        }
+
+        normalizer.normalize(frames, nFrames, out);
+        return nFrames;
+    }
+
+    private void computeFrames(float[] audio, int offset, int length, int from, int to) {
+        if (from >= to) {
+            return;
+        }
+        if (pool != null && to - from > MIN_FRAMES_PER_TASK) {
+            pool.invoke(new FrameRangeTask(audio, offset, length, from, to));
+        } else {
+            computeFrameRange(melSpectrogram, mel, audio, offset, length, from, to);
+        }
+        framesComputed += to - from;
+    }
+
+    private void computeFrameRange(MelSpectrogram spectrogram, float[] melScratch,
+                                   float[] audio, int offset, int length, int from, int to) {
+        for (int k = from; k < to; k++) {
+            spectrogram.computeMelFrame(audio, offset, length, k, melScratch);
+            final int base = k * nMels;
+            for (int i = 0; i < nMels; i++) {
+                frames[base + i] = normalizer.log10(melScratch[i]);
+            }
+        }
+    }
+
+    /**
+     * Splits a frame range in halves until it is small enough, then computes it with the
+     * current worker's own spectrogram. Workers write disjoint rows of the frame store.
+     */
+    private class FrameRangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final float[] audio;
+        private final int offset;
+        private final int length;
+        private final int from;
+        private final int to;
+
+        FrameRangeTask(float[] audio, int offset, int length, int from, int to) {
+            this.audio = audio;
+            this.offset = offset;
+            this.length = length;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= MIN_FRAMES_PER_TASK) {
+                computeFrameRange(workerSpectrogram.get(), workerMel.get(),
+                        audio, offset, length, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new FrameRangeTask(audio, offset, length, from, mid),
+                    new FrameRangeTask(audio, offset, length, mid, to));
+        }
+    }
+
+    public long getFramesComputed() {
+        return framesComputed;
+    }
+
+    public long getFramesReused() {
+        return framesReused;
+    }
+
+    public void logStats() {
+        long total = framesComputed + framesReused;
+        Log.d(TAG, String.format("Mel frames computed: %d, reused from overlap: %d (%.1f%%)",
+                framesComputed, framesReused, total > 0 ? 100.0 * framesReused / total : 0.0));
+    }
+}
@@ -0,0 +1,179 @@
+package com.example.myapplication.transcriptionService;
+
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+import android.util.Log;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Decodes a compressed audio file and turns every decoded mono block into PCM at the target
+ * sample rate as it arrives. Decoding runs asynchronously on the decoder's own thread, a few
+ * blocks ahead of the reader, so the footprint does not depend on the length of the
+ * recording.
+ */
+public class DecodedPcmSource implements PcmSource {
+    private static final String TAG = "DecodedPcmSource";
+    // Decoded blocks (about 20-60 ms each) buffered ahead of the reader
+    private static final int DECODE_QUEUE_BLOCKS = 8;
+
+    private final int targetRate;
+    private final Resampler.Quality quality;
+    private final MediaExtractor extractor;
+    private AsyncAudioDecoder decoder;
+    private Resampler resampler;
+    private long expectedSamples;
+
+    private boolean outputDone;
+    private long samplesProduced;
+
+    // Resampled samples of the current block waiting to be read
+    private float[] pending = new float[0];
+    private int pendingPos;
+    private int pendingCount;
+
+    public DecodedPcmSource(String audioPath, int targetRate, Resampler.Quality quality) throws IOException {
+        this.targetRate = targetRate;
+        this.quality = quality;
+        this.extractor = new MediaExtractor();
+        try {
+            extractor.setDataSource(audioPath);
+
+            // Log original file duration
+            MediaFormat format_ = extractor.getTrackFormat(0);
+            long durationUs = format_.getLong(MediaFormat.KEY_DURATION);
+            float durationSec = durationUs / 1_000_000f;
+            Log.d(TAG, String.format("Original audio duration: %.2f seconds", durationSec));
+
+            // Select the first audio track
+            int audioTrackIndex = -1;
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                format = extractor.getTrackFormat(i);
+                String mime = format.getString(MediaFormat.KEY_MIME);
+                assert mime != null;
+                if (mime.startsWith("audio/")) {
+                    audioTrackIndex = i;
+                    break;
+                }
+            }
+
+            if (audioTrackIndex == -1) {
+                throw new IOException("No audio track found");
+            }
+
+            extractor.selectTrack(audioTrackIndex);
+
+            // Get audio properties
+            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
+            int originalSampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
+            String mime = format.getString(MediaFormat.KEY_MIME);
+            Log.d(TAG, "Audio mime type: " + mime);
+            Log.d(TAG, String.format("Decoding at %d Hz (%d channels), resampling to %d Hz (%s)",
+                    originalSampleRate, channels, targetRate, quality));
+
+            // Number of samples librosa would report for this duration
+            expectedSamples = (long) (targetRate * durationSec);
+
+            if (mime.equals("audio/raw")) {
+                Log.e(TAG, "Uncompressed audio format detected.");
+                outputDone = true;
+                expectedSamples = 0;
+                return;
+            }
+
+            resampler = Resampler.create(originalSampleRate, targetRate, quality);
+
+            // For compressed formats, we need to use MediaCodec to decode
+            decoder = new AsyncAudioDecoder(extractor, format, DECODE_QUEUE_BLOCKS);
+        } catch (IOException | RuntimeException e) {
+            // Nothing is returned to close, so release what was opened so far
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public long getExpectedSamples() {
+        return expectedSamples;
+    }
+
+    @Override
+    public int read(float[] buffer, int offset, int length) throws IOException {
+        while (pendingPos == pendingCount) {
+            if (outputDone) {
+                return readPadding(buffer, offset, length);
+            }
+            nextBlock();
+        }
+
+        int count = Math.min(length, pendingCount - pendingPos);
+        System.arraycopy(pending, pendingPos, buffer, offset, count);
+        pendingPos += count;
+        samplesProduced += count;
+        return count;
+    }
+
+    /**
+     * Resamples the next decoded block, or flushes the resampler at the end of the stream.
+     *
+     * @throws IOException if decoding failed or was interrupted
+     */
+    private void nextBlock() throws IOException {
+        AsyncAudioDecoder.PcmBlock block = decoder.take();
+        if (block == null) {
+            outputDone = true;
+            flushResampler();
+            return;
+        }
+
+        pending = ensureCapacity(pending, resampler.maxOutput(block.length));
+        pendingPos = 0;
+        pendingCount = resampler.process(block.samples, 0, block.length, pending, 0);
+        decoder.recycle(block);
+    }
+
+    private void flushResampler() {
+        // Keep whatever has not been read yet in front of the flushed tail
+        int remaining = pendingCount - pendingPos;
+        float[] tail = ensureCapacity(new float[0], remaining + resampler.maxFlush());
+        System.arraycopy(pending, pendingPos, tail, 0, remaining);
+        int flushed = resampler.flush(tail, remaining);
+        pending = tail;
+        pendingPos = 0;
+        pendingCount = remaining + flushed;
+
+        Log.d(TAG, "Decoding finished, " + (samplesProduced + pendingCount) + " samples at "
+                + targetRate + " Hz, expected " + expectedSamples);
+    }
+
+    /**
+     * Extends the decoded audio with silence up to the expected duration, which matches
+     * librosa's behaviour when the decoder returns slightly fewer samples.
+     */
+    private int readPadding(float[] buffer, int offset, int length) {
+        long missing = expectedSamples - samplesProduced;
+        if (missing <= 0) {
+            return -1;
+        }
+        int count = (int) Math.min(length, missing);
+        Arrays.fill(buffer, offset, offset + count, 0f);
+        samplesProduced += count;
+        return count;
+    }
+
+    private static float[] ensureCapacity(float[] array, int size) {
+        return array.length >= size ? array : new float[size];
+    }
+
+    @Override
+    public void close() {
+        // Returns once the decoder thread has ended, nothing reads the extractor after that
+        if (decoder != null) {
+            decoder.close();
+            decoder = null;
+        }
+        extractor.release();
+    }
+}
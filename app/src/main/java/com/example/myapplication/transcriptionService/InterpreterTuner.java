@@ -0,0 +1,280 @@
+package com.example.myapplication.transcriptionService;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import org.tensorflow.lite.Interpreter;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Picks the CPU execution options of the TFLite interpreter for this device. The first time
+ * a model is loaded every candidate profile (thread count, XNNPACK on or off) is timed on a
+ * synthetic input and the fastest one is stored in SharedPreferences, keyed by the model and
+ * the build fingerprint, so that later loads apply it right away and an OS update or a new
+ * model triggers a new benchmark.
+ * The synthetic input is the normalized log-mel of digital silence, so the timings measure
+ * the encoder and a short decode and give a lower bound of the real-time factor.
+ */
+public class InterpreterTuner {
+    private static final String TAG = "InterpreterTuner";
+    private static final String PREFS_NAME = "interpreter_tuning";
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8};
+    // Timed runs per profile after one warm-up run, the fastest counts
+    private static final int BENCHMARK_RUNS = 2;
+    // Normalized log-mel value of an all-zero frame
+    private static final float SILENCE_FEATURE = -1.5f;
+    // Weight of the latest transcription in the stored chunk time
+    private static final float CHUNK_TIME_SMOOTHING = 0.3f;
+
+    /**
+     * Interpreter options that are benchmarked against each other.
+     */
+    public static final class Profile {
+        final int threads;
+        final boolean useXnnpack;
+
+        Profile(int threads, boolean useXnnpack) {
+            this.threads = threads;
+            this.useXnnpack = useXnnpack;
+        }
+
+        public Interpreter.Options toOptions() {
+            Interpreter.Options options = new Interpreter.Options();
+            options.setNumThreads(threads);
+            options.setUseXNNPACK(useXnnpack);
+            return options;
+        }
+
+        String encode() {
+            return threads + "," + useXnnpack;
+        }
+
+        static Profile decode(String value) {
+            String[] parts = value.split(",");
+            return new Profile(Integer.parseInt(parts[0]), Boolean.parseBoolean(parts[1]));
+        }
+
+        @Override
+        public String toString() {
+            return threads + " threads, XNNPACK " + (useXnnpack ? "on" : "off");
+        }
+    }
+
+    /**
+     * Timing of one profile. The real-time factor is the inference time divided by the
+     * length of audio the input represents, below 1 is faster than real time.
+     */
+    public static final class Result {
+        final Profile profile;
+        final long millis;
+        final double realTimeFactor;
+
+        Result(Profile profile, long millis, double realTimeFactor) {
+            this.profile = profile;
+            this.millis = millis;
+            this.realTimeFactor = realTimeFactor;
+        }
+
+        public Profile getProfile() {
+            return profile;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public double getRealTimeFactor() {
+            return realTimeFactor;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s: %d ms, RTF %.3f", profile, millis, realTimeFactor);
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final String key;
+    private final float inputSeconds;
+
+    /**
+     * @param context context to store the profiles in the app's preferences
+     * @param modelName asset name of the model
+     * @param modelBytes size of the model file, so that a replaced model is benchmarked again
+     * @param inputSeconds length of audio one inference covers
+     */
+    public InterpreterTuner(Context context, String modelName, long modelBytes, float inputSeconds) {
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.key = modelName + "|" + modelBytes + "|" + Build.FINGERPRINT;
+        this.inputSeconds = inputSeconds;
+    }
+
+    /**
+     * Returns the stored profile for this model and device, benchmarking all profiles first
+     * if there is none.
+     *
+     * @param model the model, it is not modified
+     * @return the fastest profile, or one with up to four threads if none could be benchmarked
+     */
+    public Profile getProfile(ByteBuffer model) {
+        String stored = prefs.getString(key + ".best", null);
+        if (stored != null) {
+            try {
+                return Profile.decode(stored);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Invalid stored profile " + stored, e);
+            }
+        }
+
+        List<Result> results = benchmark(model);
+        if (results.isEmpty()) {
+            return new Profile(Math.min(4, Runtime.getRuntime().availableProcessors()), true);
+        }
+        Result best = results.get(0);
+        for (Result result : results) {
+            if (result.millis < best.millis) {
+                best = result;
+            }
+        }
+        store(results, best.profile);
+        Log.d(TAG, "Selected " + best);
+        return best.profile;
+    }
+
+    /**
+     * This function times every candidate profile on the synthetic input.
+     *
+     * @param model the model, it is not modified
+     * @return one result per profile the interpreter could be created with
+     */
+    public List<Result> benchmark(ByteBuffer model) {
+        List<Result> results = new ArrayList<>();
+        for (Profile profile : candidates()) {
+            try (Interpreter interpreter = new Interpreter(model, profile.toOptions())) {
+                ByteBuffer input = ByteBuffer.allocateDirect(interpreter.getInputTensor(0).numBytes())
+                        .order(ByteOrder.nativeOrder());
+                FloatBuffer features = input.asFloatBuffer();
+                while (features.hasRemaining()) {
+                    features.put(SILENCE_FEATURE);
+                }
+                ByteBuffer output = ByteBuffer.allocateDirect(interpreter.getOutputTensor(0).numBytes())
+                        .order(ByteOrder.nativeOrder());
+
+                long best = Long.MAX_VALUE;
+                for (int run = 0; run <= BENCHMARK_RUNS; run++) {
+                    input.rewind();
+                    output.rewind();
+                    long start = System.nanoTime();
+                    interpreter.run(input, output);
+                    long elapsed = (System.nanoTime() - start) / 1_000_000;
+                    if (run > 0) {
+                        best = Math.min(best, elapsed);
+                    }
+                }
+                Result result = new Result(profile, best, best / 1000.0 / inputSeconds);
+                Log.d(TAG, "Benchmark " + result);
+                results.add(result);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Profile " + profile + " failed", e);
+            }
+        }
+        return results;
+    }
+
+    private static List<Profile> candidates() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        List<Profile> profiles = new ArrayList<>();
+        for (int threads : THREAD_COUNTS) {
+            if (threads <= cores) {
+                profiles.add(new Profile(threads, true));
+                profiles.add(new Profile(threads, false));
+            }
+        }
+        return profiles;
+    }
+
+    private void store(List<Result> results, Profile best) {
+        StringBuilder encoded = new StringBuilder();
+        for (Result result : results) {
+            if (encoded.length() > 0) {
+                encoded.append(';');
+            }
+            encoded.append(result.profile.encode()).append(',').append(result.millis);
+        }
+        prefs.edit()
+                .putString(key + ".best", best.encode())
+                .putString(key + ".results", encoded.toString())
+                .apply();
+    }
+
+    /**
+     * Benchmark results stored for this model and device, empty if it has not been tuned.
+     *
+     * @return one result per benchmarked profile
+     */
+    public List<Result> getResults() {
+        String stored = prefs.getString(key + ".results", null);
+        if (stored == null || stored.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Result> results = new ArrayList<>();
+        for (String entry : stored.split(";")) {
+            String[] parts = entry.split(",");
+            long millis = Long.parseLong(parts[2]);
+            Profile profile = new Profile(Integer.parseInt(parts[0]), Boolean.parseBoolean(parts[1]));
+            results.add(new Result(profile, millis, millis / 1000.0 / inputSeconds));
+        }
+        return results;
+    }
+
+    /**
+     * This function records the average inference time per chunk of a real transcription.
+     * Speech takes longer to decode than the silent benchmark input, so once recorded this
+     * is what getChunkMillis() reports.
+     *
+     * @param millis average inference time of one chunk
+     */
+    public void recordChunkMillis(long millis) {
+        if (millis <= 0) {
+            return;
+        }
+        long stored = prefs.getLong(key + ".chunk", -1);
+        long average = stored > 0 ? Math.round(stored + CHUNK_TIME_SMOOTHING * (millis - stored)) : millis;
+        prefs.edit().putLong(key + ".chunk", average).apply();
+    }
+
+    /**
+     * Expected inference time of one chunk on this device: the running average of real
+     * transcriptions, or the fastest benchmark run if there was none yet.
+     *
+     * @return milliseconds, or -1 if the model has not been measured
+     */
+    public long getChunkMillis() {
+        long recorded = prefs.getLong(key + ".chunk", -1);
+        if (recorded > 0) {
+            return recorded;
+        }
+        long best = -1;
+        for (Result result : getResults()) {
+            if (best < 0 || result.millis < best) {
+                best = result.millis;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Forgets the stored profile and chunk time, the next load benchmarks again.
+     */
+    public void clear() {
+        prefs.edit().remove(key + ".best").remove(key + ".results").remove(key + ".chunk").apply();
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.myapplication.transcriptionService;
+
+/**
+ * Streaming linear-interpolation resampler. Input can be pushed in blocks of any size and
+ * the concatenated output equals resampling the whole signal at once: output sample i is
+ * interpolated at input position i * (originalRate / targetRate), and the stream produces
+ * ceil(inputSamples * targetRate / originalRate) samples in total.
+ */
+final class LinearResampler implements Resampler {
+    private final int originalRate;
+    private final int targetRate;
+    private final double ratio;
+
+    private long inputCount;   // input samples received so far
+    private long outputCount;  // output samples produced so far
+    private float lastSample;  // input sample at inputCount - 1
+
+    LinearResampler(int originalRate, int targetRate) {
+        this.originalRate = originalRate;
+        this.targetRate = targetRate;
+        this.ratio = (double) originalRate / targetRate;
+    }
+
+    @Override
+    public int maxOutput(int inputLength) {
+        return (int) ((long) inputLength * targetRate / originalRate) + 2;
+    }
+
+    @Override
+    public int maxFlush() {
+        return maxOutput(1);
+    }
+
+    /**
+     * Resamples in[offset, offset + length) and writes every output sample whose two
+     * neighbouring inputs are now known.
+     *
+     * @return number of samples written to out
+     */
+    @Override
+    public int process(float[] in, int offset, int length, float[] out, int outOffset) {
+        final long blockStart = inputCount;
+        final long blockEnd = inputCount + length;
+        int written = 0;
+
+        while (true) {
+            double sourceIdx = outputCount * ratio;
+            long sourceIdxInt = (long) sourceIdx;
+            if (sourceIdxInt + 1 >= blockEnd) {
+                break;
+            }
+            double frac = sourceIdx - sourceIdxInt;
+
+            float s0 = sourceIdxInt < blockStart
+                    ? lastSample
+                    : in[offset + (int) (sourceIdxInt - blockStart)];
+            float s1 = in[offset + (int) (sourceIdxInt + 1 - blockStart)];
+            out[outOffset + written++] = (float) ((1.0 - frac) * s0 + frac * s1);
+            outputCount++;
+        }
+
+        if (length > 0) {
+            lastSample = in[offset + length - 1];
+        }
+        inputCount = blockEnd;
+        return written;
+    }
+
+    /**
+     * Writes the remaining output at the end of the stream. The last input sample is held,
+     * anything past it is silence.
+     *
+     * @return number of samples written to out
+     */
+    @Override
+    public int flush(float[] out, int outOffset) {
+        final long total = (inputCount * targetRate + originalRate - 1) / originalRate;
+        int written = 0;
+        while (outputCount < total) {
+            long sourceIdxInt = (long) (outputCount * ratio);
+            out[outOffset + written++] = sourceIdxInt < inputCount ? lastSample : 0f;
+            outputCount++;
+        }
+        return written;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.myapplication.transcriptionService;
+
+import java.nio.FloatBuffer;
+
+/**
+ * Whisper's log-mel normalization, applied in one pass while writing the model input:
+ * log10(max(mel, 1e-10)), clamped to (max - 8) and scaled with (x + 4) / 4. Frames past
+ * the end of the audio get the log-mel value of digital silence, which is what Whisper
+ * sees for its zero-padded input, rather than 0.
+ * An optional fast log replaces Math.log10 with a bit-level approximation whose error is
+ * reported by {@link #measureFastLogError()}.
+ */
+public class LogMelNormalizer {
+    private static final float MEL_FLOOR = 1e-10f;
+    private static final float LOG10_MEL_FLOOR = -10f;
+    private static final float DYNAMIC_RANGE = 8f;
+    private static final float LOG10_2 = 0.30102999566f;
+
+    private final int nMels;
+    private final int nFramesOut;
+    private final boolean fastLog;
+
+    // Log-mel column of digital silence, used for every padded frame
+    private final float[] silenceColumn;
+
+    public LogMelNormalizer(int nMels, int nFramesOut, boolean fastLog) {
+        this.nMels = nMels;
+        this.nFramesOut = nFramesOut;
+        this.fastLog = fastLog;
+
+        this.silenceColumn = new float[nMels];
+        for (int i = 0; i < nMels; i++) {
+            silenceColumn[i] = LOG10_MEL_FLOOR;
+        }
+    }
+
+    public boolean isFastLog() {
+        return fastLog;
+    }
+
+    /**
+     * log10 of a mel power value, floored like Whisper.
+     *
+     * @param mel mel power value
+     * @return log10 of the value, at least log10 of the floor
+     */
+    public float log10(float mel) {
+        float value = Math.max(mel, MEL_FLOOR);
+        return fastLog ? fastLog10(value) : (float) Math.log10(value);
+    }
+
+    /**
+     * Writes the normalized model input for a chunk.
+     *
+     * @param logFrames log-mel values, frame-major [nFrames][nMels]
+     * @param nFrames number of frames computed from audio, the rest is padding
+     * @param out model input, [nMels][nFramesOut]
+     */
+    public void normalize(float[] logFrames, int nFrames, FloatBuffer out) {
+        // Padded frames hold the silence value, so the maximum never drops below it
+        float max = nFrames < nFramesOut ? LOG10_MEL_FLOOR : Float.NEGATIVE_INFINITY;
+        final int count = nFrames * nMels;
+        for (int i = 0; i < count; i++) {
+            if (logFrames[i] > max) {
+                max = logFrames[i];
+            }
+        }
+        final float floor = max - DYNAMIC_RANGE;
+
+        // Clamp, scale and transpose into the [nMels][nFramesOut] layout in one pass
+        for (int k = 0; k < nFrames; k++) {
+            final int base = k * nMels;
+            for (int i = 0; i < nMels; i++) {
+                float value = Math.max(logFrames[base + i], floor);
+                out.put(i * nFramesOut + k, (value + 4.0f) / 4.0f);
+            }
+        }
+
+        for (int i = 0; i < nMels; i++) {
+            float padValue = (Math.max(silenceColumn[i], floor) + 4.0f) / 4.0f;
+            final int base = i * nFramesOut;
+            for (int k = nFrames; k < nFramesOut; k++) {
+                out.put(base + k, padValue);
+            }
+        }
+    }
+
+    /**
+     * Approximates log10 from the float's exponent plus a polynomial on the mantissa.
+     * Only valid for positive, normal inputs, which the mel floor guarantees.
+     *
+     * @param x positive, normal float
+     * @return approximate log10 of x
+     */
+    static float fastLog10(float x) {
+        int bits = Float.floatToRawIntBits(x);
+        int exponent = ((bits >>> 23) & 0xff) - 127;
+        float f = Float.intBitsToFloat((bits & 0x007fffff) | 0x3f800000) - 1.0f;
+
+        // Least-squares fit of log2(1 + f) on [0, 1), exact at f = 0
+        float log2m = f * (1.4418799f + f * (-0.70886522f + f * (0.41524556f
+                + f * (-0.19351653f + f * 0.045268293f))));
+        return (exponent + log2m) * LOG10_2;
+    }
+
+    /**
+     * Maximum absolute error of fastLog10 against Math.log10 over the range of mel power
+     * values the model sees, in log10 units (the model input is that divided by 4).
+     *
+     * @return the maximum absolute error
+     */
+    public static double measureFastLogError() {
+        double maxError = 0;
+        final int steps = 200000;
+        for (int i = 0; i <= steps; i++) {
+            // Sweep log-uniformly from the mel floor to 1e6
+            float x = (float) Math.pow(10, -10 + 16.0 * i / steps);
+            double error = Math.abs(fastLog10(x) - Math.log10(x));
+            maxError = Math.max(maxError, error);
+        }
+        return maxError;
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.myapplication.transcriptionService;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads raw little-endian mono PCM that is already at the model's sample rate, such as the
+ * 16-bit sidecar written by the speech recorder or a float entry of the PCM cache. The file
+ * is memory-mapped, so there is no decoding, resampling or copying beyond the conversion
+ * to float.
+ */
+public class MappedPcmSource implements PcmSource {
+    private static final String TAG = "MappedPcmSource";
+
+    private final RandomAccessFile file;
+    // Exactly one of the two views is set, depending on the sample format
+    private final ShortBuffer shortSamples;
+    private final FloatBuffer floatSamples;
+    private final int sampleCount;
+
+    /**
+     * Maps a headerless 16-bit PCM file.
+     *
+     * @param pcmPath path of the file
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public MappedPcmSource(String pcmPath) throws IOException {
+        this(pcmPath, 0, false);
+    }
+
+    /**
+     * @param pcmPath path of the file
+     * @param headerBytes bytes to skip at the start of the file
+     * @param floatFormat true for 32-bit float samples, false for 16-bit integers
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    MappedPcmSource(String pcmPath, long headerBytes, boolean floatFormat) throws IOException {
+        this.file = new RandomAccessFile(pcmPath, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY,
+                    headerBytes, channel.size() - headerBytes);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (floatFormat) {
+                this.floatSamples = mapped.asFloatBuffer();
+                this.shortSamples = null;
+                this.sampleCount = floatSamples.capacity();
+            } else {
+                this.shortSamples = mapped.asShortBuffer();
+                this.floatSamples = null;
+                this.sampleCount = shortSamples.capacity();
+            }
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+        Log.d(TAG, "Mapped " + sampleCount + " PCM samples from " + pcmPath);
+    }
+
+    @Override
+    public int read(float[] buffer, int offset, int length) {
+        if (floatSamples != null) {
+            int count = Math.min(length, floatSamples.remaining());
+            if (count == 0) {
+                return length == 0 ? 0 : -1;
+            }
+            floatSamples.get(buffer, offset, count);
+            return count;
+        }
+
+        int count = Math.min(length, shortSamples.remaining());
+        if (count == 0) {
+            return length == 0 ? 0 : -1;
+        }
+        for (int i = 0; i < count; i++) {
+            buffer[offset + i] = shortSamples.get() / 32768.0f;
+        }
+        return count;
+    }
+
+    @Override
+    public long getExpectedSamples() {
+        return sampleCount;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
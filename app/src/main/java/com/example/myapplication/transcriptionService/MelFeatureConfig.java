@@ -0,0 +1,261 @@
+package com.example.myapplication.transcriptionService;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable feature-extraction setup shared by every {@link MelSpectrogram}.
+ * The Hann window, the FFT bin frequencies and the mel filterbank only depend on
+ * (sample rate, n_fft, hop length, n_mels), so they are built once per combination
+ * and reused for every chunk of every recording.
+ */
+public final class MelFeatureConfig {
+    private static final Map<String, MelFeatureConfig> CACHE = new ConcurrentHashMap<>();
+
+    private final float sampleRate;
+    private final int n_fft;
+    private final int hop_length;
+    private final int n_mels;
+    private final double fMin;
+    private final double fMax;
+
+    // Precomputed tables, never modified after construction
+    final float[] window;
+    final double[] fftFreqs;
+    final double[][] melBasis;
+
+    // Sparse form of melBasis: mel i covers bins [melStart[i], melEnd[i]) with melWeights[i]
+    final int[] melStart;
+    final int[] melEnd;
+    final float[][] melWeights;
+
+    private MelFeatureConfig(float sampleRate, int n_fft, int hop_length, int n_mels) {
+        this.sampleRate = sampleRate;
+        this.n_fft = n_fft;
+        this.hop_length = hop_length;
+        this.n_mels = n_mels;
+        this.fMin = 0.0;
+        this.fMax = sampleRate / 2.0;
+
+        this.window = getWindow();
+        this.fftFreqs = fftFreq();
+        this.melBasis = melFilter();
+
+        this.melStart = new int[n_mels];
+        this.melEnd = new int[n_mels];
+        this.melWeights = new float[n_mels][];
+        sparsifyMelFilter();
+    }
+
+    /**
+     * Returns the shared config for the given parameters, building it on first use.
+     *
+     * @param sampleRate sample rate of the audio in Hz
+     * @param n_fft FFT and window length in samples
+     * @param hop_length samples between frames
+     * @param n_mels number of mel bins
+     * @return the config, the same instance for the same parameters
+     */
+    public static MelFeatureConfig get(float sampleRate, int n_fft, int hop_length, int n_mels) {
+        String key = sampleRate + "/" + n_fft + "/" + hop_length + "/" + n_mels;
+        return CACHE.computeIfAbsent(key, k -> new MelFeatureConfig(sampleRate, n_fft, hop_length, n_mels));
+    }
+
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    public int getNFft() {
+        return n_fft;
+    }
+
+    public int getHopLength() {
+        return hop_length;
+    }
+
+    public int getNMels() {
+        return n_mels;
+    }
+
+    /**
+     * This function is used to create a Filterbank matrix to combine FFT bins into
+     * Mel-frequency bins.
+     *
+     * @return filter weights as [n_mels][1 + n_fft / 2]
+     */
+    private double[][] melFilter() {
+        // Create a Filterbank matrix to combine FFT bins into Mel-frequency bins.
+        // 'Center freqs' of mel bands - uniformly spaced between limits
+        final double[] melF = melFreq(n_mels + 2);
+
+        double[] fdiff = new double[melF.length - 1];
+        for (int i = 0; i < melF.length - 1; i++) {
+            fdiff[i] = melF[i + 1] - melF[i];
+        }
+
+        double[][] ramps = new double[melF.length][fftFreqs.length];
+        for (int i = 0; i < melF.length; i++) {
+            for (int j = 0; j < fftFreqs.length; j++) {
+                ramps[i][j] = melF[i] - fftFreqs[j];
+            }
+        }
+
+        double[][] weights = new double[n_mels][1 + n_fft / 2];
+        for (int i = 0; i < n_mels; i++) {
+            for (int j = 0; j < fftFreqs.length; j++) {
+                double lowerF = -ramps[i][j] / fdiff[i];
+                double upperF = ramps[i + 2][j] / fdiff[i + 1];
+                if (lowerF > upperF && upperF > 0) {
+                    weights[i][j] = upperF;
+                } else if (lowerF > upperF && upperF < 0) {
+                    weights[i][j] = 0;
+                } else if (lowerF < upperF && lowerF > 0) {
+                    weights[i][j] = lowerF;
+                } else if (lowerF < upperF && lowerF < 0) {
+                    weights[i][j] = 0;
+                } else {
+                }
+            }
+        }
+
+        double enorm[] = new double[n_mels];
+        for (int i = 0; i < n_mels; i++) {
+            enorm[i] = 2.0 / (melF[i + 2] - melF[i]);
+            for (int j = 0; j < fftFreqs.length; j++) {
+                weights[i][j] *= enorm[i];
+            }
+        }
+        return weights;
+
+        // need to check if there's an empty channel somewhere
+    }
+
+    /**
+     * Each triangular filter only touches a handful of FFT bins, so keep just the
+     * non-zero span of every row of the filterbank.
+     */
+    private void sparsifyMelFilter() {
+        for (int i = 0; i < n_mels; i++) {
+            int start = 0;
+            int end = melBasis[i].length;
+            while (start < end && melBasis[i][start] == 0) {
+                start++;
+            }
+            while (end > start && melBasis[i][end - 1] == 0) {
+                end--;
+            }
+
+            melStart[i] = start;
+            melEnd[i] = end;
+            melWeights[i] = new float[end - start];
+            for (int j = start; j < end; j++) {
+                melWeights[i][j - start] = (float) melBasis[i][j];
+            }
+        }
+    }
+
+    /**
+     * To get fft frequencies
+     *
+     * @return center frequency in Hz of each of the 1 + n_fft / 2 bins
+     */
+    private double[] fftFreq() {
+        // Alternative implementation of np.fft.fftfreqs
+        double[] freqs = new double[1 + n_fft / 2];
+        for (int i = 0; i < 1 + n_fft / 2; i++) {
+            freqs[i] = 0 + (sampleRate / 2) / (n_fft / 2) * i;
+        }
+        return freqs;
+    }
+
+    /**
+     * To get mel frequencies
+     *
+     * @param numMels number of frequencies
+     * @return frequencies in Hz, evenly spaced on the mel scale between fMin and fMax
+     */
+    private double[] melFreq(int numMels) {
+        // 'Center freqs' of mel bands - uniformly spaced between limits
+        double[] LowFFreq = new double[1];
+        double[] HighFFreq = new double[1];
+        LowFFreq[0] = fMin;
+        HighFFreq[0] = fMax;
+        final double[] melFLow = freqToMel(LowFFreq);
+        final double[] melFHigh = freqToMel(HighFFreq);
+        double[] mels = new double[numMels];
+        for (int i = 0; i < numMels; i++) {
+            mels[i] = melFLow[0] + (melFHigh[0] - melFLow[0]) / (numMels - 1) * i;
+        }
+        return melToFreq(mels);
+    }
+
+    /**
+     * To convert hz frequencies into mel frequencies
+     *
+     * @param freqs frequencies in Hz
+     * @return the same frequencies on the Slaney mel scale
+     */
+    static double[] freqToMel(double[] freqs) {
+        final double f_min = 0.0;
+        final double f_sp = 200.0 / 3;
+        double[] mels = new double[freqs.length];
+
+        // Fill in the log-scale part
+
+        final double min_log_hz = 1000.0; // beginning of log region (Hz)
+        final double min_log_mel = (min_log_hz - f_min) / f_sp; // # same (Mels)
+        final double logstep = Math.log(6.4) / 27.0; // step size for log region
+
+        for (int i = 0; i < freqs.length; i++) {
+            if (freqs[i] < min_log_hz) {
+                mels[i] = (freqs[i] - f_min) / f_sp;
+            } else {
+                mels[i] = min_log_mel + Math.log(freqs[i] / min_log_hz) / logstep;
+            }
+        }
+        return mels;
+    }
+
+    /**
+     * To convert mel frequencies into hz frequencies
+     *
+     * @param mels frequencies on the Slaney mel scale
+     * @return the same frequencies in Hz
+     */
+    static double[] melToFreq(double[] mels) {
+        // Fill in the linear scale
+        final double f_min = 0.0;
+        final double f_sp = 200.0 / 3;
+        double[] freqs = new double[mels.length];
+
+        // And now the nonlinear scale
+        final double min_log_hz = 1000.0; // beginning of log region (Hz)
+        final double min_log_mel = (min_log_hz - f_min) / f_sp; // same (Mels)
+        final double logstep = Math.log(6.4) / 27.0;
+
+        for (int i = 0; i < mels.length; i++) {
+            if (mels[i] < min_log_mel) {
+                freqs[i] = f_min + f_sp * mels[i];
+            } else {
+                freqs[i] = min_log_hz * Math.exp(logstep * (mels[i] - min_log_mel));
+            }
+        }
+        return freqs;
+    }
+
+    /**
+     * This function is used to get hann window, librosa
+     *
+     * @return periodic Hann window of n_fft samples
+     */
+    private float[] getWindow() {
+        // Return a Hann window for even n_fft.
+        // The Hann window is a taper formed by using a raised cosine or sine-squared
+        // with ends that touch zero.
+        float[] win = new float[n_fft];
+        for (int i = 0; i < n_fft; i++) {
+            win[i] = (float) (0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / n_fft));
+        }
+        return win;
+    }
+}
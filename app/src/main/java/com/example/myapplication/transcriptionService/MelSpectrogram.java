@@ -1,181 +1,113 @@
 package com.example.myapplication.transcriptionService;
 
-import org.apache.commons.math3.complex.Complex;
-import org.apache.commons.math3.transform.DftNormalization;
-import org.apache.commons.math3.transform.FastFourierTransformer;
-import org.apache.commons.math3.transform.TransformType;
-
 public class MelSpectrogram {
-    private float sampleRate = 16000;
-    private int n_fft = 512;
-    private int hop_length = 160;
-    private int n_mels = 80;
-    private double fMin = 0.0;
-    private double fMax = sampleRate / 2.0;
-
+    private final MelFeatureConfig config;
+    private final int n_fft;
+    private final int hop_length;
+    private final RealFFT fft;
+
+    // Per-instance scratch space, reused for every frame
+    private final float[] fftFrame;
+    private final float[] power;
+    private final float[] mel;
+
+    public MelSpectrogram() {
+        this(MelFeatureConfig.get(16000, 512, 160, 80));
+    }
 
     /**
-     * This function generates mel spectrogram values
+     * Creates a spectrogram extractor backed by a shared, precomputed config.
+     * The FFT scratch space is owned by the instance, so it must not be shared between threads.
      *
-     * @param y
-     * @return
+     * @param config shared filterbank, window and FFT parameters
      */
-    public double[][] melSpectrogram(float[] y) {
-        double[][] melBasis = melFilter();
-        double[][] spectro = extractSTFTFeatures(y);
-        double[][] melS = new double[melBasis.length][spectro[0].length];
-        for (int i = 0; i < melBasis.length; i++) {
-            for (int j = 0; j < spectro[0].length; j++) {
-                for (int k = 0; k < melBasis[0].length; k++) {
-                    melS[i][j] += melBasis[i][k] * spectro[k][j];
-                }
-            }
-        }
-        return melS;
+    public MelSpectrogram(MelFeatureConfig config) {
+        this.config = config;
+        this.n_fft = config.getNFft();
+        this.hop_length = config.getHopLength();
+        this.fft = new RealFFT(n_fft);
+        this.fftFrame = new float[n_fft];
+        this.power = new float[1 + n_fft / 2];
+        this.mel = new float[config.getNMels()];
     }
 
     /**
-     * This function is used to create a Filterbank matrix to combine FFT bins into
-     * Mel-frequency bins.
+     * Number of centered frames librosa produces for a signal of the given length
      *
-     * @return
+     * @param length number of samples
+     * @return number of frames
      */
-    private double[][] melFilter() {
-        // Create a Filterbank matrix to combine FFT bins into Mel-frequency bins.
-        // Center freqs of each FFT bin
-        final double[] fftFreqs = fftFreq();
-        // 'Center freqs' of mel bands - uniformly spaced between limits
-        final double[] melF = melFreq(n_mels + 2);
-
-        double[] fdiff = new double[melF.length - 1];
-        for (int i = 0; i < melF.length - 1; i++) {
-            fdiff[i] = melF[i + 1] - melF[i];
-        }
-
-        double[][] ramps = new double[melF.length][fftFreqs.length];
-        for (int i = 0; i < melF.length; i++) {
-            for (int j = 0; j < fftFreqs.length; j++) {
-                ramps[i][j] = melF[i] - fftFreqs[j];
-            }
-        }
-
-        double[][] weights = new double[n_mels][1 + n_fft / 2];
-        for (int i = 0; i < n_mels; i++) {
-            for (int j = 0; j < fftFreqs.length; j++) {
-                double lowerF = -ramps[i][j] / fdiff[i];
-                double upperF = ramps[i + 2][j] / fdiff[i + 1];
-                if (lowerF > upperF && upperF > 0) {
-                    weights[i][j] = upperF;
-                } else if (lowerF > upperF && upperF < 0) {
-                    weights[i][j] = 0;
-                } else if (lowerF < upperF && lowerF > 0) {
-                    weights[i][j] = lowerF;
-                } else if (lowerF < upperF && lowerF < 0) {
-                    weights[i][j] = 0;
-                } else {
-                }
-            }
-        }
-
-        double enorm[] = new double[n_mels];
-        for (int i = 0; i < n_mels; i++) {
-            enorm[i] = 2.0 / (melF[i + 2] - melF[i]);
-            for (int j = 0; j < fftFreqs.length; j++) {
-                weights[i][j] *= enorm[i];
-            }
-        }
-        return weights;
-
-        // need to check if there's an empty channel somewhere
+    public int frameCount(int length) {
+        return 1 + length / hop_length;
     }
 
     /**
-     * To get fft frequencies
+     * This function generates mel spectrogram values
      *
-     * @return
+     * @param y the signal
+     * @return mel power values as [n_mels][frames]
      */
-    private double[] fftFreq() {
-        // Alternative implementation of np.fft.fftfreqs
-        double[] freqs = new double[1 + n_fft / 2];
-        for (int i = 0; i < 1 + n_fft / 2; i++) {
-            freqs[i] = 0 + (sampleRate / 2) / (n_fft / 2) * i;
+    public double[][] melSpectrogram(float[] y) {
+        final int nFrames = frameCount(y.length);
+        double[][] melS = new double[config.getNMels()][nFrames];
+
+        // Go frame by frame so the power spectrum stays in cache for the projection
+        for (int k = 0; k < nFrames; k++) {
+            computeMelFrame(y, 0, y.length, k, mel);
+            for (int i = 0; i < mel.length; i++) {
+                melS[i][k] = mel[i];
+            }
         }
-        return freqs;
+        return melS;
     }
 
     /**
-     * To get mel frequencies
+     * Computes the mel power values of one centered frame of y[offset, offset + length).
      *
-     * @param numMels
-     * @return
+     * @param y array holding the signal
+     * @param offset first sample of the signal in y
+     * @param length number of samples in the signal
+     * @param frameIndex frame to compute, centered on sample frameIndex * hop_length
+     * @param melOut receives n_mels values
      */
-    private double[] melFreq(int numMels) {
-        // 'Center freqs' of mel bands - uniformly spaced between limits
-        double[] LowFFreq = new double[1];
-        double[] HighFFreq = new double[1];
-        LowFFreq[0] = fMin;
-        HighFFreq[0] = fMax;
-        final double[] melFLow = freqToMel(LowFFreq);
-        final double[] melFHigh = freqToMel(HighFFreq);
-        double[] mels = new double[numMels];
-        for (int i = 0; i < numMels; i++) {
-            mels[i] = melFLow[0] + (melFHigh[0] - melFLow[0]) / (numMels - 1) * i;
-        }
-        return melToFreq(mels);
+    void computeMelFrame(float[] y, int offset, int length, int frameIndex, float[] melOut) {
+        windowedFrame(y, offset, length, frameIndex, fftFrame);
+        melFromWindowedFrame(fftFrame, melOut);
     }
 
     /**
-     * To convert hz frequencies into mel frequencies
+     * Runs the FFT and mel projection on a frame that has already been windowed.
      *
-     * @param freqs
-     * @return
+     * @param frame n_fft windowed samples
+     * @param melOut receives n_mels values
      */
-    protected double[] freqToMel(double[] freqs) {
-        final double f_min = 0.0;
-        final double f_sp = 200.0 / 3;
-        double[] mels = new double[freqs.length];
-
-        // Fill in the log-scale part
-
-        final double min_log_hz = 1000.0; // beginning of log region (Hz)
-        final double min_log_mel = (min_log_hz - f_min) / f_sp; // # same (Mels)
-        final double logstep = Math.log(6.4) / 27.0; // step size for log region
-
-        for (int i = 0; i < freqs.length; i++) {
-            if (freqs[i] < min_log_hz) {
-                mels[i] = (freqs[i] - f_min) / f_sp;
-            } else {
-                mels[i] = min_log_mel + Math.log(freqs[i] / min_log_hz) / logstep;
-            }
-        }
-        return mels;
+    void melFromWindowedFrame(float[] frame, float[] melOut) {
+        fft.powerSpectrum(frame, power);
+        projectMel(power, melOut);
     }
 
     /**
-     * To convert mel frequencies into hz frequencies
+     * Projects one power spectrum onto the mel filterbank, visiting only the
+     * non-zero bins of each filter.
      *
-     * @param mels
-     * @return
+     * @param powerSpec power of the 1 + n_fft / 2 FFT bins
+     * @param melOut receives n_mels values
      */
-    private double[] melToFreq(double[] mels) {
-        // Fill in the linear scale
-        final double f_min = 0.0;
-        final double f_sp = 200.0 / 3;
-        double[] freqs = new double[mels.length];
-
-        // And now the nonlinear scale
-        final double min_log_hz = 1000.0; // beginning of log region (Hz)
-        final double min_log_mel = (min_log_hz - f_min) / f_sp; // same (Mels)
-        final double logstep = Math.log(6.4) / 27.0;
-
-        for (int i = 0; i < mels.length; i++) {
-            if (mels[i] < min_log_mel) {
-                freqs[i] = f_min + f_sp * mels[i];
-            } else {
-                freqs[i] = min_log_hz * Math.exp(logstep * (mels[i] - min_log_mel));
+    void projectMel(float[] powerSpec, float[] melOut) {
+        final int[] melStart = config.melStart;
+        final int[] melEnd = config.melEnd;
+        final float[][] melWeights = config.melWeights;
+
+        for (int i = 0; i < melOut.length; i++) {
+            final float[] weights = melWeights[i];
+            final int start = melStart[i];
+            final int end = melEnd[i];
+            float sum = 0f;
+            for (int j = start; j < end; j++) {
+                sum += weights[j - start] * powerSpec[j];
             }
+            melOut[i] = sum;
         }
-        return freqs;
     }
 
     /**
@@ -186,130 +118,63 @@ public class MelSpectrogram {
      */
     public double[][] extractSTFTFeatures(float[] y) {
         // Short-time Fourier transform (STFT)
-        final double[] fftwin = getWindow();
-
-        // pad y with reflect mode so it's centered. This reflect padding implementation
-        // is
-        final double[][] frame = padFrame(y, true);
-        double[][] fftmagSpec = new double[1 + n_fft / 2][frame[0].length];
+        final int nFrames = frameCount(y.length);
+        double[][] fftmagSpec = new double[1 + n_fft / 2][nFrames];
 
-        double[] fftFrame = new double[n_fft];
+        for (int k = 0; k < nFrames; k++) {
+            windowedFrame(y, 0, y.length, k, fftFrame);
+            fft.powerSpectrum(fftFrame, power);
 
-        for (int k = 0; k < frame[0].length; k++) {
-            int fftFrameCounter = 0;
-            for (int l = 0; l < n_fft; l++) {
-                fftFrame[fftFrameCounter] = fftwin[l] * frame[l][k];
-                fftFrameCounter = fftFrameCounter + 1;
-            }
-
-            double[] tempConversion = new double[fftFrame.length];
-            double[] tempImag = new double[fftFrame.length];
-
-            FastFourierTransformer transformer = new FastFourierTransformer(DftNormalization.STANDARD);
-
-
-
-            try {
-                Complex[] complx = transformer.transform(fftFrame, TransformType.FORWARD);
-
-                for (int i = 0; i < complx.length; i++) {
-                    double rr = (complx[i].getReal());
-
-                    double ri = (complx[i].getImaginary());
-
-                    tempConversion[i] = rr * rr + ri*ri;
-                    tempImag[i] = ri;
-                }
-
-            } catch (IllegalArgumentException e) {
-                System.out.println(e);
-            }
-
-
-
-            double[] magSpec = tempConversion;
             for (int i = 0; i < 1 + n_fft / 2; i++) {
-                fftmagSpec[i][k] = magSpec[i];
+                fftmagSpec[i][k] = power[i];
             }
         }
         return fftmagSpec;
     }
 
     /**
-     * This function is used to get hann window, librosa
-     *
-     * @return
-     */
-    private double[] getWindow() {
-        // Return a Hann window for even n_fft.
-        // The Hann window is a taper formed by using a raised cosine or sine-squared
-        // with ends that touch zero.
-        double[] win = new double[n_fft];
-        for (int i = 0; i < n_fft; i++) {
-            win[i] = 0.5 - 0.5 * Math.cos(2.0 * Math.PI * i / n_fft);
-        }
-        return win;
-    }
-
-    /**
-     * This function pads the y values
+     * Copies the windowed samples of one centered frame into frame. The signal is treated as
+     * if it were reflect-padded by n_fft / 2 on both sides (librosa center=True), but the
+     * padding is resolved by index mapping so no padded copy or frame matrix is ever built.
      *
-     * @param yValues
-     * @return
+     * @param y array holding the signal
+     * @param offset first sample of the signal in y
+     * @param length number of samples in the signal
+     * @param frameIndex frame to copy, centered on sample frameIndex * hop_length
+     * @param frame receives n_fft windowed samples
      */
+    private void windowedFrame(float[] y, int offset, int length, int frameIndex, float[] frame) {
+        final float[] fftwin = config.window;
+        final int start = frameIndex * hop_length - n_fft / 2;
 
-    private double[][] padFrame(float[] yValues, boolean paddingFlag){
-
-        double[][] frame = null;
-
-        if(paddingFlag) {
-
-
-            double[] ypad = new double[n_fft + yValues.length];
-            for (int i = 0; i < n_fft / 2; i++) {
-                ypad[(n_fft / 2) - i - 1] = yValues[i + 1];
-                ypad[(n_fft / 2) + yValues.length + i] = yValues[yValues.length - 2 - i];
-            }
-            for (int j = 0; j < yValues.length; j++) {
-                ypad[(n_fft / 2) + j] = yValues[j];
+        if (start >= 0 && start + n_fft <= length) {
+            // Interior frame, read straight from the signal
+            final int base = offset + start;
+            for (int l = 0; l < n_fft; l++) {
+                frame[l] = fftwin[l] * y[base + l];
             }
-
-            frame = yFrame(ypad);
-        }
-        else {
-
-
-            double[] yDblValues = new double[yValues.length];
-            for (int i = 0 ; i < yValues.length; i++)
-            {
-                yDblValues[i] = (double) yValues[i];
+        } else {
+            // Edge frame, part of the window falls into the reflect padding
+            for (int l = 0; l < n_fft; l++) {
+                frame[l] = fftwin[l] * y[offset + reflectIndex(start + l, length)];
             }
-
-            frame = yFrame(yDblValues);
-
         }
-
-        return frame;
     }
 
     /**
-     * This function is used to apply padding and return Frame
+     * Maps an index of the reflect-padded signal back into [0, length), mirroring around the
+     * first and last sample without repeating them (numpy "reflect" mode).
      *
-     * @param ypad
-     * @return
+     * @param i index into the padded signal, relative to the first sample
+     * @param length number of samples in the signal
+     * @return the index of the sample it mirrors
      */
-    private double[][] yFrame(double[] ypad) {
-
-        final int n_frames = 1 + (ypad.length - n_fft) / hop_length;
-
-        double[][] winFrames = new double[n_fft][n_frames];
-
-        for (int i = 0; i < n_fft; i++) {
-            for (int j = 0; j < n_frames; j++) {
-                winFrames[i][j] = ypad[j * hop_length + i];
-            }
+    static int reflectIndex(int i, int length) {
+        if (length == 1) {
+            return 0;
         }
-        return winFrames;
+        final int period = 2 * (length - 1);
+        i = Math.floorMod(i, period);
+        return i < length ? i : period - i;
     }
-
-}
\ No newline at end of file
+}
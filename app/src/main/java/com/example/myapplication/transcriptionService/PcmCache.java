@@ -0,0 +1,247 @@
+package com.example.myapplication.transcriptionService;
+
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Disk cache of decoded recordings, so that transcribing the same recording again maps the
+ * PCM straight from a file instead of decoding and resampling it. Every entry is one file of
+ * float samples at the model's sample rate behind a small header that records the source
+ * file's size and modification time; an entry whose source changed is ignored and replaced.
+ * Entries are written while the recording is decoded for the first time and evicted least
+ * recently used first once the cache grows past its budget.
+ */
+public class PcmCache {
+    private static final String TAG = "PcmCache";
+    private static final String SUFFIX = ".f32";
+    private static final int MAGIC = 0x50434d43;  // "PCMC"
+    private static final int VERSION = 1;
+    // magic, version, sample rate, padding, source size, source mtime, sample count
+    static final int HEADER_BYTES = 4 + 4 + 4 + 4 + 8 + 8 + 8;
+
+    private final File directory;
+    private final long maxBytes;
+    private final int sampleRate;
+
+    /**
+     * @param directory cache directory, created if missing
+     * @param maxBytes disk budget of all entries together
+     * @param sampleRate sample rate of the cached PCM
+     */
+    public PcmCache(File directory, long maxBytes, int sampleRate) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.sampleRate = sampleRate;
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create cache directory " + directory);
+        }
+    }
+
+    /**
+     * Returns the cached PCM of a recording, or null if there is no valid entry.
+     *
+     * @param source the recording
+     * @return the cached samples, or null if the recording has to be decoded
+     */
+    public PcmSource open(File source) {
+        File entry = entryFor(source);
+        if (!entry.exists()) {
+            return null;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(entry, "r")) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            file.getChannel().read(header, 0);
+            header.flip();
+            boolean valid = header.remaining() == HEADER_BYTES
+                    && header.getInt() == MAGIC
+                    && header.getInt() == VERSION
+                    && header.getInt() == sampleRate
+                    && header.getInt() == 0
+                    && header.getLong() == source.length()
+                    && header.getLong() == source.lastModified()
+                    && file.length() == HEADER_BYTES + 4 * header.getLong();
+            if (!valid) {
+                Log.d(TAG, "Stale cache entry for " + source.getName());
+                entry.delete();
+                return null;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Error reading cache entry " + entry, e);
+            return null;
+        }
+
+        try {
+            // The modification time of an entry is its last use, for LRU eviction
+            entry.setLastModified(System.currentTimeMillis());
+            Log.d(TAG, "Cache hit for " + source.getName());
+            return new MappedPcmSource(entry.getPath(), HEADER_BYTES, true);
+        } catch (IOException e) {
+            Log.e(TAG, "Error mapping cache entry " + entry, e);
+            return null;
+        }
+    }
+
+    /**
+     * Wraps a decoding source so that everything read from it is also written to the cache.
+     * The entry is only committed if the stream was read to its end before closing.
+     *
+     * @param source the recording the PCM is decoded from
+     * @param decoded source decoding the recording
+     * @return a source reading from decoded
+     */
+    public PcmSource wrap(File source, PcmSource decoded) {
+        try {
+            return new CachingPcmSource(source, decoded);
+        } catch (IOException e) {
+            Log.e(TAG, "Cannot write cache entry for " + source.getName(), e);
+            return decoded;
+        }
+    }
+
+    /**
+     * Deletes the entry of a recording, for recordings that are deleted themselves.
+     *
+     * @param source the recording
+     * @return whether there was an entry
+     */
+    public boolean remove(File source) {
+        File entry = entryFor(source);
+        // An entry still being written is discarded when its rename fails
+        new File(directory, entry.getName() + ".tmp").delete();
+        boolean removed = entry.delete();
+        if (removed) {
+            Log.d(TAG, "Removed " + entry.getName());
+        }
+        return removed;
+    }
+
+    private File entryFor(File source) {
+        String path = source.getAbsolutePath();
+        String name = source.getName().replaceAll("[^a-zA-Z0-9_]", "_");
+        return new File(directory, name + "_" + Integer.toHexString(path.hashCode()) + SUFFIX);
+    }
+
+    /**
+     * Deletes the least recently used entries until the cache fits its budget.
+     */
+    void evict() {
+        File[] entries = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (entries == null) {
+            return;
+        }
+        long total = 0;
+        for (File entry : entries) {
+            total += entry.length();
+        }
+
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified));
+        for (File entry : entries) {
+            if (total <= maxBytes) {
+                break;
+            }
+            total -= entry.length();
+            if (entry.delete()) {
+                Log.d(TAG, "Evicted " + entry.getName());
+            }
+        }
+    }
+
+    private class CachingPcmSource implements PcmSource {
+        private final File source;
+        private final PcmSource decoded;
+        private final long sourceSize;
+        private final long sourceModified;
+        private final File tempFile;
+        private final FileChannel channel;
+        private ByteBuffer bytes = ByteBuffer.allocateDirect(0);
+        private long samplesWritten;
+        private boolean complete;
+        private boolean failed;
+
+        CachingPcmSource(File source, PcmSource decoded) throws IOException {
+            this.source = source;
+            this.decoded = decoded;
+            this.sourceSize = source.length();
+            this.sourceModified = source.lastModified();
+            this.tempFile = new File(directory, entryFor(source).getName() + ".tmp");
+            this.channel = new FileOutputStream(tempFile).getChannel();
+            // Header is written on commit, once the sample count is known
+            channel.position(HEADER_BYTES);
+        }
+
+        @Override
+        public int read(float[] buffer, int offset, int length) throws IOException {
+            int count = decoded.read(buffer, offset, length);
+            if (count < 0) {
+                complete = true;
+            } else if (count > 0 && !failed) {
+                write(buffer, offset, count);
+            }
+            return count;
+        }
+
+        private void write(float[] buffer, int offset, int count) {
+            if (bytes.capacity() < 4 * count) {
+                bytes = ByteBuffer.allocateDirect(4 * count).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            bytes.clear();
+            bytes.asFloatBuffer().put(buffer, offset, count);
+            bytes.limit(4 * count);
+            try {
+                while (bytes.hasRemaining()) {
+                    channel.write(bytes);
+                }
+                samplesWritten += count;
+            } catch (IOException e) {
+                // The transcription goes on without a cache entry
+                Log.e(TAG, "Error writing cache entry", e);
+                failed = true;
+            }
+        }
+
+        @Override
+        public long getExpectedSamples() {
+            return decoded.getExpectedSamples();
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                decoded.close();
+            } finally {
+                commit();
+            }
+        }
+
+        private void commit() throws IOException {
+            try {
+                if (complete && !failed) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+                    header.putInt(MAGIC).putInt(VERSION).putInt(sampleRate).putInt(0)
+                            .putLong(sourceSize).putLong(sourceModified).putLong(samplesWritten);
+                    header.flip();
+                    channel.write(header, 0);
+                }
+            } finally {
+                channel.close();
+            }
+
+            if (complete && !failed && tempFile.renameTo(entryFor(source))) {
+                Log.d(TAG, "Cached " + samplesWritten + " samples of " + source.getName());
+                evict();
+            } else {
+                tempFile.delete();
+            }
+        }
+    }
+}
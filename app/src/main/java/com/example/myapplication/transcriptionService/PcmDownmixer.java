@@ -0,0 +1,93 @@
+package com.example.myapplication.transcriptionService;
+
+import android.media.AudioFormat;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+
+/**
+ * Turns a decoder output buffer of interleaved PCM into normalized mono floats in a single
+ * pass: samples are read through a typed view of the buffer, the channels of each frame are
+ * summed and the sum is scaled once, so no per-channel or interleaved float copy is made.
+ */
+final class PcmDownmixer {
+    private int encoding = AudioFormat.ENCODING_PCM_16BIT;
+    private int channels = 1;
+
+    /**
+     * Updates the layout from the decoder's output format.
+     *
+     * @param encoding AudioFormat.ENCODING_PCM_16BIT or ENCODING_PCM_FLOAT
+     * @param channels number of interleaved channels
+     */
+    void setFormat(int encoding, int channels) {
+        if (encoding != AudioFormat.ENCODING_PCM_16BIT && encoding != AudioFormat.ENCODING_PCM_FLOAT) {
+            throw new IllegalArgumentException("Unsupported PCM encoding: " + encoding);
+        }
+        this.encoding = encoding;
+        this.channels = channels;
+    }
+
+    int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Number of mono samples convert() produces for the buffer's remaining bytes.
+     *
+     * @param pcm decoder output
+     * @return number of whole frames in the buffer
+     */
+    int frameCount(ByteBuffer pcm) {
+        int bytesPerSample = encoding == AudioFormat.ENCODING_PCM_FLOAT ? 4 : 2;
+        return pcm.remaining() / (bytesPerSample * channels);
+    }
+
+    /**
+     * Converts pcm[position, limit) into mono, writing frameCount(pcm) samples to mono.
+     *
+     * @param pcm decoder output, native little-endian order
+     * @param mono receives the samples from its start
+     * @return number of mono samples written
+     */
+    int convert(ByteBuffer pcm, float[] mono) {
+        final int frames = frameCount(pcm);
+        final ByteBuffer data = pcm.slice().order(ByteOrder.LITTLE_ENDIAN);
+
+        if (encoding == AudioFormat.ENCODING_PCM_FLOAT) {
+            FloatBuffer samples = data.asFloatBuffer();
+            if (channels == 1) {
+                samples.get(mono, 0, frames);
+                return frames;
+            }
+            final float scale = 1.0f / channels;
+            for (int i = 0, s = 0; i < frames; i++) {
+                float sum = 0f;
+                for (int ch = 0; ch < channels; ch++) {
+                    sum += samples.get(s++);
+                }
+                mono[i] = sum * scale;
+            }
+        } else {
+            ShortBuffer samples = data.asShortBuffer();
+            // Normalize to [-1.0, 1.0] and average the channels with one multiply
+            final float scale = 1.0f / (32768.0f * channels);
+            if (channels == 1) {
+                for (int i = 0; i < frames; i++) {
+                    mono[i] = samples.get(i) * scale;
+                }
+                return frames;
+            }
+            for (int i = 0, s = 0; i < frames; i++) {
+                int sum = 0;
+                for (int ch = 0; ch < channels; ch++) {
+                    sum += samples.get(s++);
+                }
+                mono[i] = sum * scale;
+            }
+        }
+        return frames;
+    }
+}
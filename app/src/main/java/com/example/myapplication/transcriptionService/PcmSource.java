@@ -0,0 +1,21 @@
+package com.example.myapplication.transcriptionService;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Pull-based stream of mono float PCM at the model's sample rate, in [-1.0, 1.0].
+ */
+public interface PcmSource extends Closeable {
+    /**
+     * Reads up to length samples into buffer[offset, offset + length).
+     *
+     * @return number of samples read, or -1 once the stream has ended
+     */
+    int read(float[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * @return total number of samples the stream is expected to produce, or -1 if unknown
+     */
+    long getExpectedSamples();
+}
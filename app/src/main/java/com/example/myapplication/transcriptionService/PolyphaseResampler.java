@@ -0,0 +1,227 @@
+package com.example.myapplication.transcriptionService;
+
+/**
+ * Rational sample rate converter using a Kaiser-windowed sinc low-pass filter split into
+ * polyphase coefficient tables. The rates are reduced to L/M (160/441 for 44.1 kHz to
+ * 16 kHz) and output sample n is taken at input position n * M / L, the same grid as
+ * {@link LinearResampler}, with the filter cutoff just below the lower of the two Nyquist
+ * frequencies so that content above 8 kHz is removed instead of folding back into the
+ * speech band.
+ * The position is tracked as an integer index plus phase, so the inner loop is a plain
+ * dot product of one coefficient row with consecutive input samples.
+ */
+final class PolyphaseResampler implements Resampler {
+    // Ratios with more phases than this (odd imported rates) snap to the nearest table phase
+    private static final int MAX_PHASES = 1024;
+
+    private final int up;    // L
+    private final int down;  // M
+    private final int halfTaps;
+    private final int taps;
+    private final int nPhases;
+    private final float[] coefficients;  // [nPhases][taps]
+
+    // Input samples from absolute index bufferStart onwards; the stream starts with silence
+    private float[] buffer;
+    private long bufferStart;
+    private int bufferCount;
+
+    private long inputCount;
+    private long outputCount;
+    // Integer input position and phase (0..L-1) of the next output sample
+    private long position;
+    private int phase;
+
+    PolyphaseResampler(int originalRate, int targetRate, Quality quality) {
+        int g = gcd(originalRate, targetRate);
+        this.up = targetRate / g;
+        this.down = originalRate / g;
+
+        final int zeroCrossings;
+        final double rolloff;
+        final double beta;
+        switch (quality) {
+            case LOW:
+                zeroCrossings = 8;
+                rolloff = 0.90;
+                beta = 6.0;
+                break;
+            case HIGH:
+                zeroCrossings = 32;
+                rolloff = 0.97;
+                beta = 10.0;
+                break;
+            case MEDIUM:
+            default:
+                zeroCrossings = 16;
+                rolloff = 0.945;
+                beta = 8.6;
+                break;
+        }
+
+        // Cutoff relative to the input Nyquist frequency
+        double cutoff = rolloff * Math.min(1.0, (double) up / down);
+        this.halfTaps = (int) Math.ceil(zeroCrossings / cutoff);
+        this.taps = 2 * halfTaps;
+        this.nPhases = Math.min(up, MAX_PHASES);
+        this.coefficients = buildTable(cutoff, beta);
+
+        this.buffer = new float[Math.max(4096, 2 * taps)];
+        this.bufferStart = -(halfTaps - 1);
+        this.bufferCount = halfTaps - 1;
+    }
+
+    /**
+     * Row p holds the filter taps for input samples i - halfTaps + 1 ... i + halfTaps when the
+     * output lies at i + p / nPhases. Every row is normalized to unit DC gain.
+     *
+     * @param cutoff cutoff frequency relative to the input Nyquist frequency
+     * @param beta shape of the Kaiser window
+     * @return the nPhases by taps table, row by row
+     */
+    private float[] buildTable(double cutoff, double beta) {
+        float[] table = new float[nPhases * taps];
+        double i0Beta = besselI0(beta);
+        for (int p = 0; p < nPhases; p++) {
+            double frac = (double) p / nPhases;
+            double[] row = new double[taps];
+            double sum = 0;
+            for (int j = 0; j < taps; j++) {
+                double t = (j - halfTaps + 1) - frac;
+                double x = t / halfTaps;
+                double window = Math.abs(x) >= 1.0
+                        ? 0.0
+                        : besselI0(beta * Math.sqrt(1.0 - x * x)) / i0Beta;
+                row[j] = cutoff * sinc(cutoff * t) * window;
+                sum += row[j];
+            }
+            for (int j = 0; j < taps; j++) {
+                table[p * taps + j] = (float) (row[j] / sum);
+            }
+        }
+        return table;
+    }
+
+    @Override
+    public int maxOutput(int inputLength) {
+        return (int) ((long) inputLength * up / down) + 2;
+    }
+
+    @Override
+    public int maxFlush() {
+        return (int) ((long) (halfTaps + 1) * up / down) + 2;
+    }
+
+    @Override
+    public int process(float[] in, int offset, int length, float[] out, int outOffset) {
+        append(in, offset, length);
+        inputCount += length;
+        int written = emit(out, outOffset, Long.MAX_VALUE);
+        compact();
+        return written;
+    }
+
+    @Override
+    public int flush(float[] out, int outOffset) {
+        // Silence after the end of the signal for the right half of the last filters
+        append(new float[halfTaps + 1], 0, halfTaps + 1);
+        final long total = (inputCount * up + down - 1) / down;
+        int written = emit(out, outOffset, total);
+        compact();
+        return written;
+    }
+
+    /**
+     * Writes every output sample whose filter window is fully buffered, up to limit outputs
+     * in total.
+     */
+    private int emit(float[] out, int outOffset, long limit) {
+        final long available = bufferStart + bufferCount;
+        int written = 0;
+        while (outputCount < limit && position + halfTaps < available) {
+            final int row = (up <= MAX_PHASES ? phase : nearestPhase(phase)) * taps;
+            final int start = (int) (position - halfTaps + 1 - bufferStart);
+
+            float acc = 0f;
+            for (int j = 0; j < taps; j++) {
+                acc += coefficients[row + j] * buffer[start + j];
+            }
+            out[outOffset + written++] = acc;
+            outputCount++;
+
+            phase += down;
+            position += phase / up;
+            phase %= up;
+        }
+        return written;
+    }
+
+    /**
+     * Rounds a phase in 1/up steps to the nearest row of the table, which has nPhases rows
+     * when up is larger than MAX_PHASES. The last half step stays on the last row.
+     */
+    private int nearestPhase(int phase) {
+        return (int) Math.min(((long) phase * nPhases + up / 2) / up, nPhases - 1);
+    }
+
+    private void append(float[] in, int offset, int length) {
+        if (bufferCount + length > buffer.length) {
+            float[] grown = new float[Math.max(buffer.length * 2, bufferCount + length)];
+            System.arraycopy(buffer, 0, grown, 0, bufferCount);
+            buffer = grown;
+        }
+        System.arraycopy(in, offset, buffer, bufferCount, length);
+        bufferCount += length;
+    }
+
+    /**
+     * Drops the samples that no future output needs.
+     */
+    private void compact() {
+        int drop = (int) Math.min(bufferCount, position - halfTaps + 1 - bufferStart);
+        if (drop <= 0) {
+            return;
+        }
+        System.arraycopy(buffer, drop, buffer, 0, bufferCount - drop);
+        bufferCount -= drop;
+        bufferStart += drop;
+    }
+
+    int getTapsPerPhase() {
+        return taps;
+    }
+
+    private static double sinc(double x) {
+        if (x == 0.0) {
+            return 1.0;
+        }
+        double px = Math.PI * x;
+        return Math.sin(px) / px;
+    }
+
+    /**
+     * Zeroth-order modified Bessel function of the first kind, by its power series.
+     */
+    private static double besselI0(double x) {
+        double sum = 1.0;
+        double term = 1.0;
+        double half = x / 2.0;
+        for (int k = 1; k < 50; k++) {
+            term *= (half / k) * (half / k);
+            sum += term;
+            if (term < 1e-12 * sum) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int t = a % b;
+            a = b;
+            b = t;
+        }
+        return a;
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.myapplication.transcriptionService;
+
+/**
+ * In-place FFT for real-valued frames of a fixed power-of-two size.
+ * The n real samples are packed into an n/2 point complex FFT (radix-2, iterative)
+ * and split back into the n/2 + 1 non-negative frequency bins afterwards.
+ * Twiddle and bit-reversal tables are built once and the scratch buffers are reused,
+ * so a transform allocates nothing. Instances are not thread-safe.
+ */
+final class RealFFT {
+    private final int n;
+    private final int half;
+
+    // Tables for the n/2 point complex FFT
+    private final int[] bitReverse;
+    private final float[] cosTable;
+    private final float[] sinTable;
+
+    // Tables for splitting the packed result into the real spectrum
+    private final float[] splitCos;
+    private final float[] splitSin;
+
+    // Reusable scratch space
+    private final float[] re;
+    private final float[] im;
+
+    RealFFT(int n) {
+        if (n < 4 || Integer.bitCount(n) != 1) {
+            throw new IllegalArgumentException("FFT size must be a power of two >= 4, got " + n);
+        }
+        this.n = n;
+        this.half = n / 2;
+
+        int bits = Integer.numberOfTrailingZeros(half);
+        bitReverse = new int[half];
+        for (int i = 0; i < half; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+
+        cosTable = new float[half / 2];
+        sinTable = new float[half / 2];
+        for (int i = 0; i < half / 2; i++) {
+            cosTable[i] = (float) Math.cos(2.0 * Math.PI * i / half);
+            sinTable[i] = (float) Math.sin(2.0 * Math.PI * i / half);
+        }
+
+        splitCos = new float[half];
+        splitSin = new float[half];
+        for (int k = 0; k < half; k++) {
+            splitCos[k] = (float) Math.cos(2.0 * Math.PI * k / n);
+            splitSin[k] = (float) Math.sin(2.0 * Math.PI * k / n);
+        }
+
+        re = new float[half];
+        im = new float[half];
+    }
+
+    int size() {
+        return n;
+    }
+
+    /**
+     * Computes |X[k]|^2 for k = 0..n/2 of a real frame.
+     *
+     * @param frame n real samples (already windowed), left untouched
+     * @param power receives n/2 + 1 power values
+     */
+    void powerSpectrum(float[] frame, float[] power) {
+        // Pack even samples into the real part and odd samples into the imaginary part
+        for (int i = 0; i < half; i++) {
+            int j = bitReverse[i];
+            re[j] = frame[2 * i];
+            im[j] = frame[2 * i + 1];
+        }
+
+        transform();
+
+        // Split the packed spectrum: X[k] = E[k] + W^k * O[k]
+        float r0 = re[0];
+        float i0 = im[0];
+        power[0] = (r0 + i0) * (r0 + i0);
+        power[half] = (r0 - i0) * (r0 - i0);
+
+        for (int k = 1; k < half; k++) {
+            float zr = re[k];
+            float zi = im[k];
+            float cr = re[half - k];
+            float ci = -im[half - k];
+
+            // Even part (Z[k] + conj(Z[N-k])) / 2
+            float er = 0.5f * (zr + cr);
+            float ei = 0.5f * (zi + ci);
+            // Odd part (Z[k] - conj(Z[N-k])) / 2i
+            float or = 0.5f * (zi - ci);
+            float oi = -0.5f * (zr - cr);
+
+            // Multiply the odd part by W^k = cos - i*sin
+            float wr = splitCos[k];
+            float wi = -splitSin[k];
+            float xr = er + (wr * or - wi * oi);
+            float xi = ei + (wr * oi + wi * or);
+
+            power[k] = xr * xr + xi * xi;
+        }
+    }
+
+    private void transform() {
+        for (int size = 2; size <= half; size <<= 1) {
+            int halfSize = size >> 1;
+            int step = half / size;
+            for (int start = 0; start < half; start += size) {
+                for (int j = 0; j < halfSize; j++) {
+                    int t = j * step;
+                    float wr = cosTable[t];
+                    float wi = -sinTable[t];
+
+                    int a = start + j;
+                    int b = a + halfSize;
+                    float tr = wr * re[b] - wi * im[b];
+                    float ti = wr * im[b] + wi * re[b];
+
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+}
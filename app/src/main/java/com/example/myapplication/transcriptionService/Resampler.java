@@ -0,0 +1,64 @@
+package com.example.myapplication.transcriptionService;
+
+/**
+ * Block-wise sample rate converter. Input is pushed in blocks of any size and the
+ * concatenated output does not depend on how the signal was split.
+ */
+interface Resampler {
+
+    enum Quality {
+        // Linear interpolation, no anti-aliasing filter
+        LINEAR,
+        // Polyphase windowed-sinc filters with increasing length and stopband attenuation
+        LOW,
+        MEDIUM,
+        HIGH
+    }
+
+    /**
+     * Creates a resampler for the given rates. Equal rates always get the linear resampler,
+     * which then passes the input through unchanged.
+     *
+     * @param originalRate sample rate of the input in Hz
+     * @param targetRate sample rate of the output in Hz
+     * @param quality which resampler to use when the rates differ
+     * @return a new resampler
+     */
+    static Resampler create(int originalRate, int targetRate, Quality quality) {
+        if (quality == Quality.LINEAR || originalRate == targetRate) {
+            return new LinearResampler(originalRate, targetRate);
+        }
+        return new PolyphaseResampler(originalRate, targetRate, quality);
+    }
+
+    /**
+     * Upper bound of the output produced by one process() call.
+     *
+     * @param inputLength number of input samples
+     * @return the largest number of samples process() may write
+     */
+    int maxOutput(int inputLength);
+
+    /**
+     * Upper bound of the output produced by flush().
+     *
+     * @return the largest number of samples flush() may write
+     */
+    int maxFlush();
+
+    /**
+     * Resamples in[offset, offset + length) and writes every output sample that can be
+     * computed from the input received so far.
+     *
+     * @return number of samples written to out
+     */
+    int process(float[] in, int offset, int length, float[] out, int outOffset);
+
+    /**
+     * Writes the remaining output at the end of the stream, treating everything past the
+     * last input sample as silence where the filter needs it.
+     *
+     * @return number of samples written to out
+     */
+    int flush(float[] out, int outOffset);
+}
@@ -0,0 +1,164 @@
+package com.example.myapplication.transcriptionService;
+
+/**
+ * Incremental counterpart of {@link MelSpectrogram}: callers push PCM blocks of any size
+ * and every centered frame is emitted as soon as its n_fft window is available. The
+ * output matches {@link MelSpectrogram#melSpectrogram(float[])} over the concatenated
+ * input, including the reflect padding at both ends (the trailing frames are produced by
+ * {@link #finish(FrameListener)}). Only the last few windows of audio are kept, in a
+ * small ring buffer.
+ * Nothing in the app uses it yet. Transcription computes the features of each 30 s chunk
+ * with {@link ChunkFeatureExtractor}. This class is a building block for computing them
+ * while recording instead.
+ */
+public class StreamingMelSpectrogram {
+
+    public interface FrameListener {
+        /**
+         * @param frameIndex index of the frame since the start of the stream
+         * @param melFrame n_mels mel power values, only valid during the call
+         */
+        void onMelFrame(int frameIndex, float[] melFrame);
+    }
+
+    private final MelFeatureConfig config;
+    private final MelSpectrogram kernel;
+    private final int n_fft;
+    private final int hop_length;
+
+    // Ring buffer holding the most recent samples, indexed by absolute sample position
+    private final float[] ring;
+    private final int mask;
+
+    private final float[] frame;
+    private final float[] mel;
+
+    private long totalSamples;
+    private int nextFrame;
+    private boolean finished;
+
+    public StreamingMelSpectrogram(MelFeatureConfig config) {
+        this.config = config;
+        this.kernel = new MelSpectrogram(config);
+        this.n_fft = config.getNFft();
+        this.hop_length = config.getHopLength();
+
+        // One window plus one hop is the most that is ever needed at once
+        int capacity = Integer.highestOneBit(n_fft + hop_length) << 1;
+        this.ring = new float[capacity];
+        this.mask = capacity - 1;
+
+        this.frame = new float[n_fft];
+        this.mel = new float[config.getNMels()];
+    }
+
+    /**
+     * Appends pcm[offset, offset + length) to the stream and emits every frame that became
+     * complete.
+     *
+     * @param pcm array holding the new samples
+     * @param offset first new sample in pcm
+     * @param length number of new samples
+     * @param listener receives the completed frames in order
+     */
+    public void push(float[] pcm, int offset, int length, FrameListener listener) {
+        if (finished) {
+            throw new IllegalStateException("Stream already finished, call reset() first");
+        }
+
+        while (length > 0) {
+            // Never overwrite samples that a pending frame still needs
+            long oldestNeeded = Math.max(0, (long) nextFrame * hop_length - n_fft / 2);
+            int space = (int) (ring.length - (totalSamples - oldestNeeded));
+            int count = Math.min(space, length);
+
+            for (int i = 0; i < count; i++) {
+                ring[(int) ((totalSamples + i) & mask)] = pcm[offset + i];
+            }
+            totalSamples += count;
+            offset += count;
+            length -= count;
+
+            // Emit the frames whose samples have all arrived
+            while (samplesNeeded(nextFrame) <= totalSamples) {
+                emitFrame(listener);
+            }
+        }
+    }
+
+    /**
+     * Ends the stream and emits the remaining frames, reflect-padding the end of the signal.
+     *
+     * @param listener receives the remaining frames in order
+     */
+    public void finish(FrameListener listener) {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        if (totalSamples == 0) {
+            return;
+        }
+
+        final long lastFrame = totalSamples / hop_length;
+        while (nextFrame <= lastFrame) {
+            emitFrame(listener);
+        }
+    }
+
+    /**
+     * Clears all state so the instance can be used for a new stream.
+     */
+    public void reset() {
+        totalSamples = 0;
+        nextFrame = 0;
+        finished = false;
+    }
+
+    public long getSamplesPushed() {
+        return totalSamples;
+    }
+
+    public int getFramesEmitted() {
+        return nextFrame;
+    }
+
+    private void emitFrame(FrameListener listener) {
+        final float[] fftwin = config.window;
+        final long start = (long) nextFrame * hop_length - n_fft / 2;
+
+        for (int l = 0; l < n_fft; l++) {
+            frame[l] = fftwin[l] * ring[(int) (sampleIndex(start + l) & mask)];
+        }
+        kernel.melFromWindowedFrame(frame, mel);
+
+        listener.onMelFrame(nextFrame, mel);
+        nextFrame++;
+    }
+
+    /**
+     * Number of samples that must have arrived before a frame can be computed. Near the
+     * start the left reflection reaches further into the signal than the window itself.
+     *
+     * @param frameIndex the frame
+     * @return samples since the start of the stream
+     */
+    private long samplesNeeded(int frameIndex) {
+        long center = (long) frameIndex * hop_length;
+        return Math.max(center + n_fft / 2, n_fft / 2 - center + 1);
+    }
+
+    /**
+     * Maps a position of the reflect-padded stream onto an absolute sample index. The end of
+     * the stream is only known once finish() has been called.
+     *
+     * @param i position relative to the first sample, negative in the left padding
+     * @return index of the sample at that position
+     */
+    private long sampleIndex(long i) {
+        if (finished) {
+            return MelSpectrogram.reflectIndex((int) i, (int) totalSamples);
+        }
+        return i < 0 ? -i : i;
+    }
+}
@@ -4,12 +4,8 @@ import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
 import android.app.Service;
+import android.content.Context;
 import android.content.Intent;
-import android.content.res.AssetFileDescriptor;
-import android.content.res.AssetManager;
-import android.media.MediaCodec;
-import android.media.MediaExtractor;
-import android.media.MediaFormat;
 import android.os.Binder;
 import android.os.IBinder;
 import android.util.Log;
@@ -17,24 +13,23 @@ import android.util.Log;
 import androidx.core.app.NotificationCompat;
 import androidx.room.Room;
 
+import com.example.myapplication.MyApplication;
 import com.example.myapplication.database.AppDatabase;
 import com.example.myapplication.database.IdeasDao;
-
-import org.json.JSONException;
-import org.tensorflow.lite.Interpreter;
+import com.example.myapplication.database.Ideas_table;
+import com.example.myapplication.database.TranscriptionJobsDao;
+import com.example.myapplication.database.TranscriptionJobs_table;
+import com.example.myapplication.recording.SpeechRecorder;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.MappedByteBuffer;
-import java.nio.channels.FileChannel;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public class TranscribeService extends Service {
     private static final String TAG = "TranscribeService";
@@ -50,12 +45,41 @@ public class TranscribeService extends Service {
     private static final int N_SAMPLES = SAMPLE_RATE * CHUNK_LENGTH;
     private static final int CHUNK_OVERLAP = 5;
     private static final int N_SAMPLES_OVERLAP = SAMPLE_RATE * CHUNK_OVERLAP;
+    private static final int N_FRAMES = 3000;
+    // Approximate log10 in the log-mel normalization, trading a tiny error for speed
+    private static final boolean USE_FAST_LOG = false;
+    // Spread mel frame computation over the common ForkJoinPool
+    private static final boolean USE_PARALLEL_FEATURES = false;
+    // Anti-aliased polyphase resampling of recordings that are not already at 16 kHz
+    private static final Resampler.Quality RESAMPLER_QUALITY = Resampler.Quality.MEDIUM;
+    // Default disk budget for decoded recordings kept for re-transcription, about 70 minutes of audio
+    private static final long PCM_CACHE_BUDGET_BYTES = 256L * 1024 * 1024;
+    private static final String PREFS_NAME = "transcription";
+    private static final String PREF_PCM_CACHE_BUDGET = "pcm_cache_budget_bytes";
+    // Skip chunks without speech and cut chunks in pauses instead of at fixed strides
+    private static final boolean USE_VAD = true;
+    // Extract features, run the model and post-process text on separate threads
+    private static final boolean USE_PIPELINE = true;
+    // Pick the Whisper variant per recording from its length and the device state
+    private static final boolean USE_MODEL_SELECTION = true;
+    private static final MelFeatureConfig MEL_CONFIG =
+            MelFeatureConfig.get(SAMPLE_RATE, N_FFT, HOP_LENGTH, N_MELS);
     private final IBinder binder = new LocalBinder();
     private ExecutorService executor;
-    private Interpreter tfliteInterpreter;
+    // Stores new jobs right away, while the executor may be busy draining the queue
+    private ExecutorService dbExecutor;
+    private AppDatabase db;
+    private WhisperModelManager modelManager;
+    private WhisperModelSpec modelSpec;
+    private WhisperInference inference;
+    private ChunkFeatureExtractor chunkFeatures;
+    private PcmCache pcmCache;
+    private VoiceActivityDetector vad;
+    private final TranscriptAssembler transcriptAssembler = new TranscriptAssembler(new TranscriptMerger());
     private WhisperTokenizer tokenizer;
-    private TranscriptionCallback callback;
-    private int id;
+    private volatile TranscriptionCallback callback;
+    // Job being transcribed
+    private volatile int id;
     private String audioFilePath;
     private String transcriptFilePath;
 
@@ -67,25 +91,59 @@ public class TranscribeService extends Service {
     }
 
     public interface TranscriptionCallback {
-        void onTranscriptionProgress(String partialTranscript, float progress);
-        void onTranscriptionComplete(String transcriptFilePath);
-        void onTranscriptionError(String error);
+        void onTranscriptionProgress(int ideaId, String partialTranscript, float progress);
+        void onTranscriptionComplete(int ideaId, String transcriptFilePath);
+        void onTranscriptionError(int ideaId, String error);
+    }
+
+    /**
+     * This function adds a recording to the persistent transcription queue and starts the
+     * service to work through it. An idea is queued only once, queuing it again with a
+     * higher priority moves it ahead of the others.
+     *
+     * @param context context to start the service with
+     * @param ideaId the idea the recording belongs to
+     * @param audioFilePath path of the m4a recording
+     * @param priority TranscriptionJobs_table.PRIORITY_OPEN for the idea open in the detail screen
+     */
+    public static void enqueue(Context context, int ideaId, String audioFilePath, int priority) {
+        Intent intent = new Intent(context, TranscribeService.class);
+        intent.putExtra("id", ideaId);
+        intent.putExtra("audioFilePath", audioFilePath);
+        intent.putExtra("priority", priority);
+        context.startForegroundService(intent);
     }
 
     @Override
     public int onStartCommand(Intent intent, int flags, int startId) {
         startForeground(NOTIFICATION_ID, createNotification("Initializing transcription service..."));
 
-        if (intent != null) {
-            id = intent.getIntExtra("id", -1);
-            audioFilePath = intent.getStringExtra("audioFilePath");
-        }
-
-        // Start transcription
-        if (audioFilePath != null) {
-            Log.d(TAG, "Starting transcription...");
-            startTranscription(audioFilePath);
-        }
+        final int ideaId = intent != null ? intent.getIntExtra("id", -1) : -1;
+        final String path = intent != null ? intent.getStringExtra("audioFilePath") : null;
+        final int priority = intent != null
+                ? intent.getIntExtra("priority", TranscriptionJobs_table.PRIORITY_BACKGROUND)
+                : TranscriptionJobs_table.PRIORITY_BACKGROUND;
+
+        // The job is stored at once, so that a running drain picks it up in priority order and
+        // it survives the process. A single drain covers every job stored before it ends.
+        final Future<?> stored = dbExecutor.submit(() -> {
+            if (ideaId != -1 && path != null) {
+                enqueueJob(ideaId, path, priority);
+            }
+        });
+        executor.execute(() -> {
+            try {
+                stored.get();
+            } catch (ExecutionException e) {
+                Log.e(TAG, "Error queuing idea " + ideaId, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            drainQueue();
+            // Does nothing if another start request came in meanwhile, its drain stops the service
+            stopSelf(startId);
+        });
         return super.onStartCommand(intent, flags, startId);
     }
 
@@ -94,520 +152,339 @@ public class TranscribeService extends Service {
         super.onCreate();
         Log.d("TranscribeService", "Service created");
         executor = Executors.newSingleThreadExecutor();
+        dbExecutor = Executors.newSingleThreadExecutor();
+        db = Room.databaseBuilder(getApplicationContext(), AppDatabase.class, "app-database")
+                .addMigrations(AppDatabase.MIGRATION_1_2).build();
+        LogMelNormalizer normalizer = new LogMelNormalizer(N_MELS, N_FRAMES, USE_FAST_LOG);
+        if (USE_FAST_LOG) {
+            Log.d(TAG, "Fast log enabled, max log10 error: " + LogMelNormalizer.measureFastLogError());
+        }
+        chunkFeatures = new ChunkFeatureExtractor(MEL_CONFIG, normalizer, N_FRAMES);
+        if (USE_PARALLEL_FEATURES) {
+            chunkFeatures.setParallelism(ForkJoinPool.commonPool());
+        }
+
+        vad = new VoiceActivityDetector(HOP_LENGTH);
+        pcmCache = createPcmCache(this);
+        // Applies a budget lowered since the last run
+        executor.execute(pcmCache::evict);
+        modelManager = ((MyApplication) getApplication()).getWhisperModelManager();
         createNotificationChannel();
-        initializeModel();
     }
 
-    private static MappedByteBuffer loadModelFile(AssetManager assets, String modelFilename)
-            throws IOException {
-        AssetFileDescriptor fileDescriptor = assets.openFd(modelFilename);
-        FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
-        FileChannel fileChannel = inputStream.getChannel();
-        long startOffset = fileDescriptor.getStartOffset();
-        long declaredLength = fileDescriptor.getDeclaredLength();
-        return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+    private static PcmCache createPcmCache(Context context) {
+        return new PcmCache(new File(context.getFilesDir(), "pcm_cache"), getPcmCacheBudget(context), SAMPLE_RATE);
     }
 
-    private void initializeModel() {
-        try {
-            // Load TFLite model
-            Log.d(TAG, "Loading TFLite model...");
-            Interpreter.Options options = new Interpreter.Options();
-            tfliteInterpreter = new Interpreter(loadModelFile(getAssets(),"whisper-tiny.tflite"), options);
+    /**
+     * Disk budget of the decoded recordings kept for re-transcription.
+     *
+     * @param context context to read the preferences with
+     * @return budget in bytes
+     */
+    public static long getPcmCacheBudget(Context context) {
+        return context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE)
+                .getLong(PREF_PCM_CACHE_BUDGET, PCM_CACHE_BUDGET_BYTES);
+    }
 
-            // Log model input/output shapes
-            int[] inputShape = tfliteInterpreter.getInputTensor(0).shape();
-            int[] outputShape = tfliteInterpreter.getOutputTensor(0).shape();
+    /**
+     * This function sets the disk budget of the decoded recordings kept for re-transcription.
+     * It applies from the next start of the service, 0 disables the cache in effect.
+     *
+     * @param context context to write the preferences with
+     * @param maxBytes budget in bytes
+     */
+    public static void setPcmCacheBudget(Context context, long maxBytes) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putLong(PREF_PCM_CACHE_BUDGET, Math.max(0, maxBytes))
+                .apply();
+    }
 
-            Log.d(TAG, "Model input shape: " + Arrays.toString(inputShape));
-            Log.d(TAG, "Model output shape: " + Arrays.toString(outputShape));
+    /**
+     * This function deletes the decoded audio cached for a recording. Call it off the main
+     * thread when the recording is deleted.
+     *
+     * @param context context to find the cache directory with
+     * @param audioFilePath path of the deleted recording
+     */
+    public static void removeCachedAudio(Context context, String audioFilePath) {
+        createPcmCache(context).remove(new File(audioFilePath));
+    }
 
-            // Initialize tokenizer
-            Log.d(TAG, "Initializing tokenizer...");
-            tokenizer = new WhisperTokenizer(getAssets());
-        } catch (IOException e) {
-            Log.e(TAG, "Error initializing model/tokenizer", e);
-            if (callback != null) {
-                callback.onTranscriptionError(e.getMessage());
-            }
-        } catch (JSONException e) {
-            throw new RuntimeException(e);
-        }
+    /**
+     * Benchmark results of the interpreter profiles on this device, empty before the model
+     * has been loaded.
+     *
+     * @return one result per benchmarked profile of the loaded model
+     */
+    public List<InterpreterTuner.Result> getInterpreterBenchmarks() {
+        return modelManager.getInterpreterBenchmarks();
     }
 
     public void setTranscriptionCallback(TranscriptionCallback callback) {
         this.callback = callback;
     }
 
-    public void startTranscription(String audioPath) {
-        executor.execute(() -> {
-            try {
-                String transcript = transcribeAudio(audioPath);
-                Log.d("TranscribeService", "Transcription complete: " + transcript);
-                saveTranscription(transcript);
-                if (callback != null) {
-                    updateNotification("Transcription complete! ");
-                    callback.onTranscriptionComplete(transcriptFilePath);
-                }
-                stopSelf();
-            } catch (Exception e) {
-                Log.e(TAG, "Transcription error", e);
-                if (callback != null) {
-                    callback.onTranscriptionError(e.getMessage());
-                }
-                stopSelf(); // stop service either way
-            }
-        });
-    }
-
-    private String transcribeAudio(String audioPath){
-        updateNotification("Loading audio file...");
-        Log.d("TranscribeService", "Load and resample audio file: " + audioPath);
-        float[] audio = loadAndResampleAudio(audioPath);
-
-        List<float[]> chunks = calculateAndCreateChunks(audio);
-        List<String> transcriptions = new ArrayList<>();
-        String previousTranscript = "";
-
-        Log.d("TranscribeService", "Processing audio chunks...");
-
-        for (int i = 0; i < chunks.size(); i++) {
-            updateNotification(String.format("Processing chunk %d/%d", i + 1, chunks.size()));
-            float progress = (float) i / chunks.size();
-
-            String transcript = processAudioChunk(chunks.get(i));
-            Log.d("TranscribeService", "Transcript for current chunk: " + transcript);
-            if (!transcript.isEmpty()) {
-                if (!previousTranscript.isEmpty()) {
-                    String cleanedTranscript = findOverlapFuzzy(previousTranscript, transcript);
-                    if (!cleanedTranscript.isEmpty()) {
-                        transcriptions.add(cleanedTranscript);
-                    }
-                } else {
-                    transcriptions.add(transcript);
-                }
-                previousTranscript = transcript;
-            }
-
-            if (callback != null) {
-                String partialTranscript = String.join(" ", transcriptions);
-                callback.onTranscriptionProgress(partialTranscript, progress);
-            }
+    private void enqueueJob(int ideaId, String path, int priority) {
+        TranscriptionJobsDao jobs = db.transcriptionJobsDao();
+        TranscriptionJobs_table job = new TranscriptionJobs_table();
+        job.idea_id = ideaId;
+        job.audio_file_path = path;
+        job.priority = priority;
+        job.created_at = new Date();
+        if (jobs.insert(job) == -1) {
+            jobs.resetExhausted(ideaId, TranscriptionJobs_table.MAX_ATTEMPTS);
+            jobs.raisePriority(ideaId, priority);
+            Log.d(TAG, "Idea " + ideaId + " is already queued, priority " + priority);
+        } else {
+            Log.d(TAG, "Queued idea " + ideaId + ", priority " + priority);
         }
-
-        return String.join(" ", transcriptions);
     }
 
-    private float[] loadAndResampleAudio(String audioPath) {
-        try {
-            MediaExtractor extractor = new MediaExtractor();
-            extractor.setDataSource(audioPath);
-
-            // Log original file duration
-            MediaFormat format_ = extractor.getTrackFormat(0);
-            long durationUs = format_.getLong(MediaFormat.KEY_DURATION);
-            float durationSec = durationUs / 1_000_000f;
-            Log.d(TAG, String.format("Original audio duration: %.2f seconds", durationSec));
-
-            // Select the first audio track
-            int audioTrackIndex = -1;
-            MediaFormat format = null;
-            for (int i = 0; i < extractor.getTrackCount(); i++) {
-                format = extractor.getTrackFormat(i);
-                String mime = format.getString(MediaFormat.KEY_MIME);
-                assert mime != null;
-                if (mime.startsWith("audio/")) {
-                    audioTrackIndex = i;
-                    break;
-                }
-            }
-
-            if (audioTrackIndex == -1) {
-                throw new IOException("No audio track found");
-            }
-
-            extractor.selectTrack(audioTrackIndex);
-
-            // Get audio properties
-            int channels = format.getInteger(MediaFormat.KEY_CHANNEL_COUNT);
-            int originalSampleRate = format.getInteger(MediaFormat.KEY_SAMPLE_RATE);
-
-            // Check for audio encoding
-            String mime = format.getString(MediaFormat.KEY_MIME);
-            Log.d(TAG, "Audio mime type: " + mime);
-
-            // For compressed formats, we need to use MediaCodec to decode
-            if (!mime.equals("audio/raw")) {
-                // This is what librosa would do - decode and get all samples
-                return decodeCompressedAudio(extractor, format, durationSec, originalSampleRate, channels);
-            }
-
-            Log.e(TAG, "Uncompressed audio format detected.");
-            return new float[0];
-        } catch (IOException e) {
-            Log.e(TAG, "Error loading audio file", e);
-            return new float[0];
+    /**
+     * Transcribes queued jobs, highest priority and oldest first, until the queue is empty.
+     * The model is kept acquired from one job to the next and only replaced when a job
+     * needs another variant. A job that fails stays queued and is tried again until it has
+     * used up MAX_ATTEMPTS, only then the failure is reported.
+     */
+    private void drainQueue() {
+        TranscriptionJobsDao jobs = db.transcriptionJobsDao();
+        dropExhausted(jobs);
+        TranscriptionJobs_table job = jobs.getNext(TranscriptionJobs_table.MAX_ATTEMPTS);
+        if (job == null) {
+            return;
         }
-    }
 
-    private float[] decodeCompressedAudio(MediaExtractor extractor, MediaFormat format,
-                                          float durationSec, int originalSampleRate, int channels) {
+        long start = System.nanoTime();
+        int completed = 0;
+        WhisperModelManager.Model model = null;
         try {
-            // Calculate expected frame count based on duration
-            long expectedFrames = (long)(durationSec * originalSampleRate);
-            Log.d(TAG, "Expected frames before decoding: " + expectedFrames);
-
-            // Create decoder
-            String mime = format.getString(MediaFormat.KEY_MIME);
-            MediaCodec decoder = MediaCodec.createDecoderByType(mime);
-            decoder.configure(format, null, null, 0);
-            decoder.start();
-
-            // Prepare buffers
-            ByteBuffer[] inputBuffers = decoder.getInputBuffers();
-            ByteBuffer[] outputBuffers = decoder.getOutputBuffers();
-            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
-            boolean isEOS = false;
-
-            // Allocate buffer for decoded PCM data - estimate based on duration
-            // 2 bytes per sample * channels * expected frames with some extra room
-            ByteBuffer pcmData = ByteBuffer.allocate((int)(2 * channels * expectedFrames * 1.1));
-            pcmData.order(ByteOrder.LITTLE_ENDIAN);
-
-            // Decode loop
-            while (!isEOS) {
-                // Feed input buffer with encoded data
-                int inIndex = decoder.dequeueInputBuffer(100000);
-                if (inIndex >= 0) {
-                    ByteBuffer buffer = inputBuffers[inIndex];
-                    buffer.clear();
-
-                    int sampleSize = extractor.readSampleData(buffer, 0);
-                    if (sampleSize < 0) {
-                        decoder.queueInputBuffer(inIndex, 0, 0, 0, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
-                        isEOS = true;
-                    } else {
-                        long sampleTime = extractor.getSampleTime();
-                        decoder.queueInputBuffer(inIndex, 0, sampleSize, sampleTime, 0);
-                        extractor.advance();
+            do {
+                // Counted before starting, so a job that takes the process down or whose model
+                // cannot be loaded is not retried forever
+                jobs.markStarted(job.id);
+                try {
+                    WhisperModelSpec spec = USE_MODEL_SELECTION
+                            ? selectModel(job)
+                            : modelManager.getRegistry().getDefault();
+                    if (model == null || model.spec != spec) {
+                        if (model != null) {
+                            model = null;
+                            modelManager.release();
+                        }
+                        // The model stays loaded in the application between transcriptions
+                        model = modelManager.acquire(spec);
                     }
+                } catch (IOException e) {
+                    Log.e(TAG, "Error loading model", e);
+                    failPending(jobs, job, "Error loading model: " + e.getMessage());
+                    return;
                 }
-
-                // Get decoded output
-                int outIndex = decoder.dequeueOutputBuffer(info, 100000);
-                if (outIndex >= 0) {
-                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) {
-                        isEOS = true;
-                    }
-
-                    ByteBuffer buffer = outputBuffers[outIndex];
-                    buffer.position(info.offset);
-                    buffer.limit(info.offset + info.size);
-
-                    // Copy decoded PCM data
-                    pcmData.put(buffer);
-
-                    decoder.releaseOutputBuffer(outIndex, false);
-                } else if (outIndex == MediaCodec.INFO_OUTPUT_BUFFERS_CHANGED) {
-                    outputBuffers = decoder.getOutputBuffers();
-                }
-            }
-
-            // Clean up
-            decoder.stop();
-            decoder.release();
-            extractor.release();
-
-            // Prepare PCM data for processing
-            pcmData.flip();
-            int totalSamples = pcmData.limit() / 2;  // 16-bit samples = 2 bytes per sample
-
-            Log.d(TAG, "Decoded PCM data size: " + pcmData.limit() + " bytes");
-            Log.d(TAG, "Total decoded samples: " + totalSamples);
-
-            // Convert to float array (normalized to [-1.0, 1.0])
-            float[] audioData = new float[totalSamples];
-            for (int i = 0; i < totalSamples; i++) {
-                if (pcmData.remaining() >= 2) {
-                    short sample = pcmData.getShort();
-                    audioData[i] = sample / 32768.0f;
+                // Model input and output buffers come preallocated with the model
+                modelSpec = model.spec;
+                inference = model.inference;
+                tokenizer = model.tokenizer;
+
+                boolean lastAttempt = job.attempts + 1 >= TranscriptionJobs_table.MAX_ATTEMPTS;
+                if (transcribeJob(job, lastAttempt)) {
+                    jobs.delete(job.id);
+                    completed++;
+                } else if (lastAttempt) {
+                    Log.e(TAG, "Giving up on idea " + job.idea_id + " after " + (job.attempts + 1) + " attempts");
+                    jobs.delete(job.id);
                 }
+                // Otherwise the job stays queued with its attempt counted and is tried again
+            } while ((job = jobs.getNext(TranscriptionJobs_table.MAX_ATTEMPTS)) != null);
+        } finally {
+            modelSpec = null;
+            inference = null;
+            tokenizer = null;
+            if (model != null) {
+                modelManager.release();
             }
-
-            Log.d(TAG, String.format("Loaded %d samples at %d Hz (%d channels)",
-                    audioData.length, originalSampleRate, channels));
-
-            // Resample if necessary
-            if (originalSampleRate != SAMPLE_RATE) {
-                audioData = resampleAudio(audioData, originalSampleRate, SAMPLE_RATE, channels);
-            }
-
-            // Convert stereo to mono if necessary
-            if (channels == 2) {
-                audioData = convertStereoToMono(audioData);
-            }
-
-            // Log expected samples after resampling
-            Log.d(TAG, "Expected samples after resampling: " + (int)(SAMPLE_RATE * durationSec));
-
-            // Check if we need to match the exact expected duration (librosa behavior)
-            float[] finalAudio = matchLibrosaDuration(audioData, durationSec, SAMPLE_RATE);
-
-            // Log audio properties
-            Log.d(TAG, "Audio loaded: " + finalAudio.length + " samples, " +
-                    "sample rate: " + SAMPLE_RATE + ", channels: 1");
-
-            return finalAudio;
-        } catch (Exception e) {
-            Log.e(TAG, "Error decoding compressed audio", e);
-            return new float[0];
         }
+        Log.d(TAG, String.format("Transcription queue drained: %d jobs in %.1f s",
+                completed, (System.nanoTime() - start) / 1e9));
     }
 
-    private float[] matchLibrosaDuration(float[] audio, float durationSec, int sampleRate) {
-        // Calculate the expected number of samples for the full duration
-        int expectedSamples = (int)(sampleRate * durationSec);
-
-        if (audio.length >= expectedSamples) {
-            Log.d(TAG, "Audio already matches expected duration");
-            return audio;
+    /**
+     * Deletes the jobs that used up their attempts without finishing and reports them as
+     * failed, so that their ideas can be queued again.
+     *
+     * @param jobs DAO of the transcription queue
+     */
+    private void dropExhausted(TranscriptionJobsDao jobs) {
+        for (TranscriptionJobs_table job : jobs.getExhausted(TranscriptionJobs_table.MAX_ATTEMPTS)) {
+            Log.e(TAG, "Giving up on idea " + job.idea_id + " after " + job.attempts + " attempts");
+            jobs.delete(job.id);
+            notifyError(job.idea_id, "Transcription failed after " + job.attempts + " attempts");
         }
-
-        // Extend the audio to match the expected duration
-        Log.d(TAG, String.format("Extending audio from %d to %d samples to match expected duration",
-                audio.length, expectedSamples));
-
-        float[] extendedAudio = new float[expectedSamples];
-
-        // Copy existing samples
-        System.arraycopy(audio, 0, extendedAudio, 0, audio.length);
-
-        // Fill the rest with zeros (silence) - this matches librosa's zero-padding behavior
-        // This is usually not the case with real audio, but ensures we get the expected duration
-
-        return extendedAudio;
     }
 
-    private float[] resampleAudio(float[] input, int originalRate, int targetRate, int channels) {
-        // Handle multi-channel audio correctly
-        int framesIn = input.length / channels;
-
-        // Calculate output length based on ratio of sample rates
-        int framesOut = (int) Math.ceil(((double) framesIn * targetRate) / originalRate);
-        float[] output = new float[framesOut * channels];
-
-        if (channels == 1) {
-            // Simple case - mono audio
-            resampleChannel(input, output, framesIn, framesOut, originalRate, targetRate);
-        } else {
-            // Handle multi-channel audio (typically stereo)
-            for (int ch = 0; ch < channels; ch++) {
-                // Extract single channel from input
-                float[] inputChannel = new float[framesIn];
-                for (int i = 0; i < framesIn; i++) {
-                    inputChannel[i] = input[i * channels + ch];
-                }
-
-                // Create buffer for resampled channel
-                float[] outputChannel = new float[framesOut];
-
-                // Resample single channel
-                resampleChannel(inputChannel, outputChannel, framesIn, framesOut, originalRate, targetRate);
-
-                // Copy back to interleaved output
-                for (int i = 0; i < framesOut; i++) {
-                    output[i * channels + ch] = outputChannel[i];
-                }
+    /**
+     * Reports every queued job as failed when the model cannot be loaded. Each of them uses
+     * up an attempt and stays queued for the next start, the last attempt deletes it.
+     *
+     * @param jobs DAO of the transcription queue
+     * @param started job whose attempt was already counted
+     * @param error message reported for every job
+     */
+    private void failPending(TranscriptionJobsDao jobs, TranscriptionJobs_table started, String error) {
+        List<TranscriptionJobs_table> pending = jobs.getPending(TranscriptionJobs_table.MAX_ATTEMPTS);
+        pending.removeIf(job -> job.id == started.id);
+        pending.add(0, started);
+        for (TranscriptionJobs_table job : pending) {
+            if (job != started) {
+                jobs.markStarted(job.id);
             }
-        }
-
-        Log.d(TAG, String.format("Resampling from %dHz to %dHz", originalRate, targetRate));
-        Log.d(TAG, String.format("Input frames: %d, Output frames: %d",
-                framesIn, framesOut));
-        Log.d(TAG, String.format("Expected duration: %.2f seconds",
-                (double) framesIn / originalRate));
-        Log.d(TAG, String.format("Actual duration: %.2f seconds",
-                (double) framesOut / targetRate));
-
-        return output;
-    }
-
-    private void resampleChannel(float[] input, float[] output, int framesIn, int framesOut, int originalRate, int targetRate) {
-        // Resample using linear interpolation
-        double ratio = (double) originalRate / targetRate;
-
-        for (int i = 0; i < framesOut; i++) {
-            double sourceIdx = i * ratio;
-            int sourceIdxInt = (int) sourceIdx;
-            double frac = sourceIdx - sourceIdxInt;
-
-            // Linear interpolation
-            if (sourceIdxInt < framesIn - 1) {
-                output[i] = (float) ((1.0 - frac) * input[sourceIdxInt] +
-                        frac * input[sourceIdxInt + 1]);
-            } else if (sourceIdxInt < framesIn) {
-                output[i] = input[sourceIdxInt];
+            if (job.attempts + 1 >= TranscriptionJobs_table.MAX_ATTEMPTS) {
+                jobs.delete(job.id);
             }
+            notifyError(job.idea_id, error);
         }
     }
 
-    private float[] convertStereoToMono(float[] stereoData) {
-        if (stereoData.length % 2 != 0) {
-            Log.w(TAG, "Warning: Audio data length is not even, might not be stereo");
-            return stereoData;
+    private void notifyError(int ideaId, String error) {
+        TranscriptionCallback callback = this.callback;
+        if (callback != null) {
+            callback.onTranscriptionError(ideaId, error);
         }
-
-        float[] monoData = new float[stereoData.length / 2];
-        for (int i = 0; i < monoData.length; i++) {
-            monoData[i] = (stereoData[i * 2] + stereoData[i * 2 + 1]) / 2.0f;
-        }
-
-        Log.d(TAG, String.format("Converted %d stereo samples to %d mono samples",
-                stereoData.length, monoData.length));
-
-        return monoData;
     }
 
-    private List<float[]> calculateAndCreateChunks(float[] audio) {
-        List<float[]> chunks = new ArrayList<>();
-        int start = 0;
-
-        while (start < audio.length) {
-            int end = Math.min(start + N_SAMPLES, audio.length);
-            float[] chunk = Arrays.copyOfRange(audio, start, end);
-
-            chunks.add(chunk);
-
-            // Log chunking results
-            Log.d(TAG, String.format("Created chunk %d: start=%d, end=%d, length=%d",
-                    chunks.size(), start, end, chunk.length));
-
-            start += (N_SAMPLES - N_SAMPLES_OVERLAP);
-        }
-
-        // Log chunking results
-        Log.d(TAG, "Audio chunking: " + chunks.size() + " chunks created");
-
-        return chunks;
+    /**
+     * This function picks the Whisper variant for a job from the recording length stored
+     * with its idea.
+     *
+     * @param job the job about to be transcribed
+     * @return the variant to acquire for the job
+     * @throws IOException if the model registry cannot be read
+     */
+    private WhisperModelSpec selectModel(TranscriptionJobs_table job) throws IOException {
+        Ideas_table idea = db.ideasDao().getIdeaById(job.idea_id);
+        long durationMillis = idea != null && idea.recording_duration != null ? idea.recording_duration : 0;
+        long samples = durationMillis * SAMPLE_RATE / 1000;
+        // Same count as the fixed stride of the AudioChunker, cuts in pauses change it slightly
+        int chunks = (int) Math.max(1, (long) Math.ceil(
+                (samples - N_SAMPLES_OVERLAP) / (double) (N_SAMPLES - N_SAMPLES_OVERLAP)));
+        return modelManager.selectModel(durationMillis, chunks);
     }
 
-    private String processAudioChunk(float[] audioChunk) {
+    /**
+     * This function transcribes the recording of a job and saves the transcript.
+     *
+     * @param job the job to transcribe
+     * @param lastAttempt whether a failure is final, only then it is reported to the callback
+     * @return true if the transcript was saved, false if the attempt failed
+     */
+    private boolean transcribeJob(TranscriptionJobs_table job, boolean lastAttempt) {
+        id = job.idea_id;
+        audioFilePath = job.audio_file_path;
         try {
-            // Convert audio to mel spectrogram
-            Log.d(TAG, "Computing mel spectrogram, length of audio chunk: " + audioChunk.length);
-            MelSpectrogram melSpectrogram = new MelSpectrogram();
-            double[][] melSpec = melSpectrogram.melSpectrogram(audioChunk);
-
-//            Log.d(TAG, "Mel spectrogram: " + Arrays.toString(melSpec[0]));
-
-            // Pad or trim to exactly 3000 frames
-            int targetFrames = 3000;
-            float[][][] inputTensor = new float[1][N_MELS][targetFrames];
-
-            // Copy and normalize mel spectrogram into input tensor
-            for (int i = 0; i < N_MELS; i++) {
-                for (int j = 0; j < targetFrames; j++) {
-                    if (j < melSpec[i].length) {
-                        double value = Math.max(melSpec[i][j], 1e-10);
-                        double logValue = Math.log10(value);
-                        inputTensor[0][i][j] = (float)((logValue + 4.0) / 4.0);
-                    }
-                }
+            String transcript = transcribeAudio(audioFilePath);
+            Log.d("TranscribeService", "Transcription complete: " + transcript);
+            saveTranscription(transcript);
+            deleteSidecar(audioFilePath);
+            updateNotification("Transcription complete! ");
+            TranscriptionCallback callback = this.callback;
+            if (callback != null) {
+                callback.onTranscriptionComplete(id, transcriptFilePath);
+            }
+            return true;
+        } catch (Exception e) {
+            Log.e(TAG, "Transcription error, attempt " + (job.attempts + 1), e);
+            if (lastAttempt) {
+                notifyError(id, e.getMessage());
             }
+            return false;
+        }
+    }
 
-            // Log normalized values
-//            Log.d(TAG, "Normalized mel spectrogram: " + Arrays.deepToString(inputTensor[0]));
+    private String transcribeAudio(String audioPath) throws IOException {
+        updateNotification("Loading audio file...");
+        Log.d("TranscribeService", "Streaming audio file: " + audioPath);
 
-            // Run inference
-            Log.d(TAG, "Running inference...");
-            int[][] outputTensor = new int[1][448];
-            tfliteInterpreter.run(inputTensor, outputTensor);
+        chunkFeatures.reset();
+        vad.reset();
+        transcriptAssembler.reset();
 
-            // Log output tokens
-//            Log.d(TAG, "Output tokens: " + Arrays.toString(outputTensor[0]));
+        Log.d("TranscribeService", "Processing audio chunks...");
 
-            // Process tokens
-            Log.d(TAG, "Processing output tokens...");
-            List<Integer> validTokens = new ArrayList<>();
-            for (int token : outputTensor[0]) {
-                if (token >= 0 && token < 50258) {
-                    validTokens.add(token);
-                }
+        // Audio is decoded, resampled and chunked on demand, one chunk in memory at a time
+        try (PcmSource source = openPcmSource(audioPath)) {
+            AudioChunker chunker = new AudioChunker(source, N_SAMPLES, N_SAMPLES_OVERLAP);
+            if (USE_VAD) {
+                chunker.setPauseDetector(vad);
             }
-
-            Log.d(TAG, "Decoding tokens...");
-            return tokenizer.decode(validTokens, true);
-        } catch (Exception e) {
-            Log.e(TAG, "Error processing audio chunk", e);
-            return "";
-        }
-    }
-
-    private String findOverlapFuzzy(String text1, String text2) {
-        // Implement fuzzy matching similar to Python's SequenceMatcher
-        // For now, using a simplified approach
-        String[] words1 = text1.split("\\s+");
-        String[] words2 = text2.split("\\s+");
-
-        int maxWindow = Math.min(words1.length, words2.length);
-        int bestOverlapLen = 0;
-        double bestRatio = 0.85; // threshold
-
-        for (int window = maxWindow; window > 3; window--) {
-            if (words1.length >= window && words2.length >= window) {
-                String text1End = String.join(" ",
-                        Arrays.copyOfRange(words1, words1.length - window, words1.length));
-                String text2Start = String.join(" ",
-                        Arrays.copyOfRange(words2, 0, window));
-
-                double ratio = calculateSimilarity(text1End.toLowerCase(), text2Start.toLowerCase());
-                if (ratio > bestRatio) {
-                    bestRatio = ratio;
-                    bestOverlapLen = window;
-                }
+            TranscriptionPipeline pipeline = new TranscriptionPipeline(chunker, USE_VAD ? vad : null,
+                    chunkFeatures, inference, tokenizer, transcriptAssembler, SAMPLE_RATE,
+                    new TranscriptionPipeline.Listener() {
+                        @Override
+                        public void onChunkStarted(int index, int estimatedCount) {
+                            updateNotification(String.format("Processing chunk %d/%d", index + 1, estimatedCount));
+                        }
+
+                        @Override
+                        public void onProgress(String partialTranscript, float progress) {
+                            TranscriptionCallback callback = TranscribeService.this.callback;
+                            if (callback != null) {
+                                callback.onTranscriptionProgress(id, partialTranscript, progress);
+                            }
+                        }
+                    });
+            if (USE_PIPELINE) {
+                pipeline.run();
+            } else {
+                pipeline.runSequential();
             }
+            modelManager.recordChunkMillis(modelSpec, pipeline.getInferenceMillisPerChunk());
         }
 
-        if (bestOverlapLen > 0) {
-            return String.join(" ",
-                    Arrays.copyOfRange(words2, bestOverlapLen, words2.length));
-        }
-        return text2;
+        chunkFeatures.logStats();
+        return transcriptAssembler.getText();
     }
 
-    private double calculateSimilarity(String s1, String s2) {
-        // Implement a simple similarity metric
-        int maxLength = Math.max(s1.length(), s2.length());
-        if (maxLength == 0) return 1.0;
-        return (double) (maxLength - levenshteinDistance(s1, s2)) / maxLength;
+    /**
+     * This function deletes the recording's raw PCM sidecar once it has been transcribed. At
+     * 32 KB per second it is several times the size of the m4a, and a later transcription
+     * of the same recording goes through the size-limited PCM cache instead.
+     *
+     * @param audioPath path of the m4a recording
+     */
+    private void deleteSidecar(String audioPath) {
+        File sidecar = new File(SpeechRecorder.sidecarPath(audioPath));
+        if (!sidecar.getPath().equals(audioPath) && sidecar.delete()) {
+            Log.d(TAG, "Deleted PCM sidecar: " + sidecar.getPath());
+        }
     }
 
-    private int levenshteinDistance(String s1, String s2) {
-        int[] prev = new int[s2.length() + 1];
-        int[] curr = new int[s2.length() + 1];
-
-        for (int j = 0; j <= s2.length(); j++) {
-            prev[j] = j;
+    /**
+     * Opens the recording's raw 16 kHz PCM sidecar if the speech recorder wrote one, then
+     * tries the PCM cache, and otherwise decodes and resamples the audio file itself while
+     * filling the cache for the next run. The recorder only gives the sidecar its name once
+     * the recording has stopped cleanly, so an existing sidecar holds the whole recording.
+     *
+     * @param audioPath path of the m4a recording
+     * @return 16 kHz mono samples of the recording, to be closed by the caller
+     * @throws IOException if the recording cannot be opened or decoded
+     */
+    private PcmSource openPcmSource(String audioPath) throws IOException {
+        File sidecar = new File(SpeechRecorder.sidecarPath(audioPath));
+        if (!sidecar.getPath().equals(audioPath) && sidecar.length() > 0) {
+            Log.d(TAG, "Using PCM sidecar: " + sidecar.getPath());
+            return new MappedPcmSource(sidecar.getPath());
         }
 
-        for (int i = 1; i <= s1.length(); i++) {
-            curr[0] = i;
-            for (int j = 1; j <= s2.length(); j++) {
-                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
-                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
-            }
-            int[] temp = prev;
-            prev = curr;
-            curr = temp;
+        File audioFile = new File(audioPath);
+        PcmSource cached = pcmCache.open(audioFile);
+        if (cached != null) {
+            return cached;
         }
-
-        return prev[s2.length()];
+        return pcmCache.wrap(audioFile, new DecodedPcmSource(audioPath, SAMPLE_RATE, RESAMPLER_QUALITY));
     }
 
     private void saveTranscription(String transcript) {
         updateNotification("Saving transcription...");
 
-        AppDatabase db = Room.databaseBuilder(getApplicationContext(), AppDatabase.class, "app-database").build();
         IdeasDao ideasDao = db.ideasDao();
 
         transcriptFilePath = audioFilePath.replace("recordings", "transcripts")
@@ -622,11 +499,9 @@ public class TranscribeService extends Service {
             writer.close();
             Log.d("TranscribeService", "Saved transcription to file: " + transcriptFilePath);
 
-            // Update database
-            new Thread (() -> {
-                ideasDao.updateTranscription(id, transcriptFilePath);
-                Log.d("TranscribeService", "Updated transcription in database: " + id);
-            }).start();
+            // Update database, already off the main thread
+            ideasDao.updateTranscription(id, transcriptFilePath);
+            Log.d("TranscribeService", "Updated transcription in database: " + id);
 
         } catch (IOException e) {
             Log.e(TAG, "Error saving transcription", e);
@@ -670,10 +545,12 @@ public class TranscribeService extends Service {
         manager.cancel(NOTIFICATION_ID);
 
         super.onDestroy();
-        if (tfliteInterpreter != null) {
-            tfliteInterpreter.close();
-        }
+        // The model is owned by the WhisperModelManager, which evicts it when idle
         if (executor != null) {
+            // Every stored job is awaited by a drain on the executor, so the database is
+            // closed after both
+            dbExecutor.shutdown();
+            executor.execute(db::close);
             executor.shutdown();
         }
 
@@ -0,0 +1,202 @@
+package com.example.myapplication.transcriptionService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Joins the transcripts of consecutive chunks into one text. When the model emits timestamp
+ * tokens, every chunk's output is split into segments with absolute positions in the
+ * recording, and the audio two chunks share is divided at its midpoint: the previous chunk
+ * keeps the segments starting before it and the next chunk the segments starting after it.
+ * Chunks without timestamps fall back to removing repeated words with the
+ * {@link TranscriptMerger}.
+ * The segments of the last chunk stay pending until the next chunk has been added, since
+ * the next chunk may still replace the ones in the shared audio.
+ */
+public class TranscriptAssembler {
+    static final int END_OF_TEXT = 50257;
+    // <|0.00|>, every following token is 20 ms later
+    static final int TIMESTAMP_BEGIN = 50364;
+    private static final int TIMESTAMPS_PER_SECOND = 50;
+
+    /**
+     * Text the model placed between two timestamps, positioned in samples from the start of
+     * the recording.
+     */
+    public static final class Segment {
+        final long start;
+        final long end;
+        final String text;
+
+        Segment(long start, long end, String text) {
+            this.start = start;
+            this.end = end;
+            this.text = text;
+        }
+    }
+
+    private final TranscriptMerger merger;
+    private final List<String> committed = new ArrayList<>();
+    private List<Segment> pending = Collections.emptyList();
+    private String previousText = "";
+
+    private int stitchedBoundaries;
+    private int mergedBoundaries;
+
+    public TranscriptAssembler(TranscriptMerger merger) {
+        this.merger = merger;
+    }
+
+    /**
+     * Forgets everything added so far, must be called before a new recording.
+     */
+    public void reset() {
+        committed.clear();
+        pending = Collections.emptyList();
+        previousText = "";
+        stitchedBoundaries = 0;
+        mergedBoundaries = 0;
+    }
+
+    /**
+     * Adds the transcript of the next chunk.
+     *
+     * @param startSample first sample of the chunk in the recording
+     * @param overlap number of samples the chunk shares with the previous one
+     * @param text the whole decoded text of the chunk
+     * @param segments the chunk's timestamped segments, empty if the model emitted none
+     */
+    public void add(long startSample, int overlap, String text, List<Segment> segments) {
+        if (text.isEmpty()) {
+            return;
+        }
+        boolean shared = overlap > 0 && !previousText.isEmpty();
+        if (shared && !pending.isEmpty() && !segments.isEmpty()) {
+            long cut = startSample + overlap / 2;
+            for (Segment segment : pending) {
+                if (segment.start < cut) {
+                    committed.add(segment.text);
+                }
+            }
+            List<Segment> kept = new ArrayList<>();
+            for (Segment segment : segments) {
+                if (segment.start >= cut) {
+                    kept.add(segment);
+                }
+            }
+            pending = kept;
+            stitchedBoundaries++;
+        } else {
+            commitPending();
+            if (shared) {
+                String cleaned = merger.merge(previousText, text);
+                if (!cleaned.isEmpty()) {
+                    committed.add(cleaned);
+                }
+                mergedBoundaries++;
+            } else if (!segments.isEmpty()) {
+                pending = segments;
+            } else {
+                committed.add(text);
+            }
+        }
+        previousText = text;
+    }
+
+    /**
+     * Marks a chunk that was not transcribed, the next chunk does not continue this one.
+     */
+    public void addSilence() {
+        commitPending();
+        previousText = "";
+    }
+
+    private void commitPending() {
+        for (Segment segment : pending) {
+            committed.add(segment.text);
+        }
+        pending = Collections.emptyList();
+    }
+
+    /**
+     * The transcript so far, including the segments still pending.
+     *
+     * @return the text of all segments
+     */
+    public String getText() {
+        List<String> parts = new ArrayList<>(committed);
+        for (Segment segment : pending) {
+            parts.add(segment.text);
+        }
+        return String.join(" ", parts);
+    }
+
+    /**
+     * Turns text tokens into text.
+     */
+    public interface TextDecoder {
+        String decode(int[] tokens, int from, int to);
+    }
+
+    /**
+     * This function splits a chunk's output tokens into segments at the timestamp tokens.
+     * Text after the last timestamp, which Whisper emits when speech runs past the end of
+     * the chunk, ends at the end of the chunk.
+     *
+     * @param tokens output tokens of the model
+     * @param tokenCount number of valid tokens
+     * @param startSample first sample of the chunk in the recording
+     * @param length number of samples in the chunk
+     * @param sampleRate sample rate the sample positions are in
+     * @param decoder turns text tokens into text
+     * @return the segments, empty if there are no timestamps
+     */
+    public static List<Segment> parseSegments(int[] tokens, int tokenCount, long startSample, int length,
+                                              int sampleRate, TextDecoder decoder) {
+        List<Segment> segments = new ArrayList<>();
+        // Text tokens of all segments, each segment is a range of it
+        int[] text = null;
+        int textCount = 0;
+        int segmentFrom = 0;
+        long segmentStart = -1;
+        for (int i = 0; i < tokenCount; i++) {
+            int token = tokens[i];
+            if (token == END_OF_TEXT) {
+                break;
+            }
+            if (token >= TIMESTAMP_BEGIN) {
+                long time = startSample + (long) (token - TIMESTAMP_BEGIN) * sampleRate / TIMESTAMPS_PER_SECOND;
+                if (segmentStart >= 0 && textCount > segmentFrom) {
+                    addSegment(segments, segmentStart, time, decoder.decode(text, segmentFrom, textCount));
+                }
+                segmentFrom = textCount;
+                segmentStart = time;
+            } else if (token >= 0 && token < END_OF_TEXT && segmentStart >= 0) {
+                if (text == null) {
+                    text = new int[tokenCount];
+                }
+                text[textCount++] = token;
+            }
+        }
+        if (segmentStart >= 0 && textCount > segmentFrom) {
+            addSegment(segments, segmentStart, startSample + length, decoder.decode(text, segmentFrom, textCount));
+        }
+        return segments;
+    }
+
+    private static void addSegment(List<Segment> segments, long start, long end, String decoded) {
+        String text = decoded.trim();
+        if (!text.isEmpty()) {
+            segments.add(new Segment(start, end, text));
+        }
+    }
+
+    public int getStitchedBoundaries() {
+        return stitchedBoundaries;
+    }
+
+    public int getMergedBoundaries() {
+        return mergedBoundaries;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.myapplication.transcriptionService;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Removes the words at the start of a chunk's transcript that repeat the end of the previous
+ * chunk's transcript, which happens because consecutive chunks share a few seconds of audio.
+ * The overlap is the window of w words (at least MIN_WINDOW) whose character similarity
+ * between the end of the previous text and the start of the next one is highest and above
+ * SIMILARITY_THRESHOLD.
+ * Instead of scoring every window size, candidate windows come from anchors: word bigrams at
+ * the start of the next text that also occur near the end of the previous text. Each
+ * candidate is then checked with a Levenshtein distance restricted to the diagonal band the
+ * threshold allows, which stops as soon as the band exceeds it.
+ */
+public class TranscriptMerger {
+    static final double SIMILARITY_THRESHOLD = 0.85;
+    // Windows of 3 words or fewer are never treated as overlap
+    static final int MIN_WINDOW = 4;
+    // Bigrams at the start of the next text used as anchors, allows for inserted words
+    private static final int ANCHOR_SPAN = 4;
+
+    private int[] previousRow = new int[0];
+    private int[] currentRow = new int[0];
+
+    /**
+     * Returns next without the words that overlap the end of previous.
+     *
+     * @param previous transcript of the previous chunk
+     * @param next transcript of the chunk that overlaps it
+     * @return next, without the overlapping words if there are any
+     */
+    public String merge(String previous, String next) {
+        String[] words1 = previous.split("\\s+");
+        String[] words2 = next.split("\\s+");
+
+        int overlap = findOverlap(words1, words2);
+        if (overlap > 0) {
+            return String.join(" ", Arrays.copyOfRange(words2, overlap, words2.length));
+        }
+        return next;
+    }
+
+    /**
+     * Number of leading words of words2 that repeat the end of words1, 0 if none.
+     *
+     * @param words1 words of the previous chunk
+     * @param words2 words of the next chunk
+     * @return number of words to drop from words2
+     */
+    int findOverlap(String[] words1, String[] words2) {
+        final int maxWindow = Math.min(words1.length, words2.length);
+        if (maxWindow < MIN_WINDOW) {
+            return 0;
+        }
+
+        // Map lowercase words to ids, only the part of words1 a window can reach matters
+        Map<String, Integer> ids = new HashMap<>();
+        final int from1 = words1.length - maxWindow;
+        int[] tail = new int[maxWindow];
+        for (int i = 0; i < maxWindow; i++) {
+            tail[i] = idOf(ids, words1[from1 + i]);
+        }
+        final int anchors = Math.min(ANCHOR_SPAN, maxWindow - 1);
+        int[] head = new int[anchors + 1];
+        for (int j = 0; j <= anchors; j++) {
+            head[j] = idOf(ids, words2[j]);
+        }
+
+        // Every tail position where one of the head bigrams occurs gives a window size
+        boolean[] candidate = new boolean[maxWindow + 2];
+        for (int p = 0; p + 1 < maxWindow; p++) {
+            for (int j = 0; j < anchors; j++) {
+                if (tail[p] == head[j] && tail[p + 1] == head[j + 1]) {
+                    int window = maxWindow - p + j;
+                    // Neighbouring sizes cover a word dropped or added before the anchor
+                    for (int w = window - 1; w <= window + 1; w++) {
+                        if (w >= MIN_WINDOW && w <= maxWindow) {
+                            candidate[w] = true;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Same scan order and tie-breaking as scoring every window from large to small
+        int bestOverlapLen = 0;
+        double bestRatio = SIMILARITY_THRESHOLD;
+        for (int window = maxWindow; window >= MIN_WINDOW; window--) {
+            if (!candidate[window]) {
+                continue;
+            }
+            String text1End = String.join(" ",
+                    Arrays.copyOfRange(words1, words1.length - window, words1.length)).toLowerCase();
+            String text2Start = String.join(" ",
+                    Arrays.copyOfRange(words2, 0, window)).toLowerCase();
+
+            int maxLength = Math.max(text1End.length(), text2Start.length());
+            if (maxLength == 0) {
+                continue;
+            }
+            // Largest distance that could still beat the best ratio so far
+            int limit = (int) Math.ceil(maxLength * (1.0 - bestRatio));
+            int distance = boundedLevenshtein(text1End, text2Start, limit);
+            if (distance > limit) {
+                continue;
+            }
+            double ratio = (double) (maxLength - distance) / maxLength;
+            if (ratio > bestRatio) {
+                bestRatio = ratio;
+                bestOverlapLen = window;
+            }
+        }
+        return bestOverlapLen;
+    }
+
+    private static int idOf(Map<String, Integer> ids, String word) {
+        String key = word.toLowerCase();
+        Integer id = ids.get(key);
+        if (id == null) {
+            id = ids.size();
+            ids.put(key, id);
+        }
+        return id;
+    }
+
+    /**
+     * Levenshtein distance of s1 and s2 if it is at most limit, otherwise any value above
+     * limit. Only cells within limit of the diagonal are computed and the scan stops once a
+     * whole row exceeds the limit.
+     *
+     * @param s1 first string
+     * @param s2 second string
+     * @param limit largest distance of interest
+     * @return the distance, or a value above limit
+     */
+    int boundedLevenshtein(String s1, String s2, int limit) {
+        final int n = s1.length();
+        final int m = s2.length();
+        if (Math.abs(n - m) > limit) {
+            return limit + 1;
+        }
+        if (previousRow.length < m + 1) {
+            previousRow = new int[m + 1];
+            currentRow = new int[m + 1];
+        }
+        final int outside = limit + 1;
+        int[] prev = previousRow;
+        int[] curr = currentRow;
+
+        for (int j = 0; j <= m; j++) {
+            prev[j] = j <= limit ? j : outside;
+        }
+
+        for (int i = 1; i <= n; i++) {
+            final int from = Math.max(1, i - limit);
+            final int to = Math.min(m, i + limit);
+            curr[0] = i <= limit ? i : outside;
+            if (from > 1) {
+                curr[from - 1] = outside;
+            }
+
+            int rowMin = curr[0];
+            final char c1 = s1.charAt(i - 1);
+            for (int j = from; j <= to; j++) {
+                int cost = (c1 == s2.charAt(j - 1)) ? 0 : 1;
+                int value = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+                curr[j] = Math.min(value, outside);
+                rowMin = Math.min(rowMin, curr[j]);
+            }
+            if (to < m) {
+                curr[to + 1] = outside;
+            }
+            if (rowMin > limit) {
+                return outside;
+            }
+
+            int[] temp = prev;
+            prev = curr;
+            curr = temp;
+        }
+        return prev[m];
+    }
+}
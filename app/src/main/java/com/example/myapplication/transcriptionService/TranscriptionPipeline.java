@@ -0,0 +1,340 @@
+package com.example.myapplication.transcriptionService;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Transcribes the chunks of one recording in three stages: feature extraction (decoding,
+ * chunking, VAD and log-mel), TFLite inference and text post-processing (detokenizing and
+ * stitching). Run pipelined, every stage has its own thread and hands chunks to the next one
+ * through a small bounded queue, so the log-mel of the next chunk is computed while the
+ * current one is in the model. The model inputs come from a fixed pool of buffers that the
+ * inference stage gives back as soon as it is done with one, which bounds how far feature
+ * extraction can run ahead.
+ * The stages can also run one after the other on the calling thread, to compare timings.
+ */
+public class TranscriptionPipeline {
+    private static final String TAG = "TranscriptionPipeline";
+    private static final int QUEUE_CAPACITY = 2;
+    // Token arrays in the output queue, plus the ones being filled and post-processed
+    private static final int TOKEN_BUFFERS = QUEUE_CAPACITY + 2;
+
+    public interface Listener {
+        void onChunkStarted(int index, int estimatedCount);
+        void onProgress(String partialTranscript, float progress);
+    }
+
+    /**
+     * One chunk on its way through the stages. The sample data is not part of it, only the
+     * model input computed from it.
+     */
+    private static final class Job {
+        static final Job END = new Job(-1, 0, 0, 0, false);
+
+        final int index;
+        final long startSample;
+        final int length;
+        final int overlap;
+        final boolean speech;
+        ByteBuffer input;
+        int[] tokens;
+        int tokenCount;
+
+        Job(int index, long startSample, int length, int overlap, boolean speech) {
+            this.index = index;
+            this.startSample = startSample;
+            this.length = length;
+            this.overlap = overlap;
+            this.speech = speech;
+        }
+    }
+
+    private final AudioChunker chunker;
+    private final VoiceActivityDetector vad;
+    private final ChunkFeatureExtractor chunkFeatures;
+    private final WhisperInference inference;
+    private final WhisperTokenizer tokenizer;
+    private final TranscriptAssembler assembler;
+    private final int sampleRate;
+    private final Listener listener;
+    private final int chunkCount;
+    // Text tokens of the chunk being post-processed
+    private final int[] textTokens;
+    private final TranscriptAssembler.TextDecoder segmentDecoder;
+
+    // Each counter is only written by its own stage
+    private long featureNanos;
+    private long inferenceNanos;
+    private long postprocessNanos;
+    private int chunksSkipped;
+    private long samplesTotal;
+    private long samplesSkipped;
+
+    private final List<Thread> stages = new ArrayList<>();
+    private volatile Throwable failure;
+
+    /**
+     * @param chunker source of the recording's chunks
+     * @param vad detector used to skip silent chunks, or null to transcribe every chunk
+     * @param chunkFeatures computes the model input of a chunk
+     * @param inference model runner, more than one input buffer lets feature extraction run ahead
+     * @param tokenizer decodes the output tokens
+     * @param assembler receives the transcript of every chunk, must have been reset
+     * @param sampleRate sample rate of the chunks
+     * @param listener receives progress and the partial transcript
+     */
+    public TranscriptionPipeline(AudioChunker chunker, VoiceActivityDetector vad,
+                                 ChunkFeatureExtractor chunkFeatures, WhisperInference inference,
+                                 WhisperTokenizer tokenizer, TranscriptAssembler assembler,
+                                 int sampleRate, Listener listener) {
+        this.chunker = chunker;
+        this.vad = vad;
+        this.chunkFeatures = chunkFeatures;
+        this.inference = inference;
+        this.tokenizer = tokenizer;
+        this.assembler = assembler;
+        this.sampleRate = sampleRate;
+        this.listener = listener;
+        this.chunkCount = chunker.getEstimatedChunkCount();
+        this.textTokens = new int[inference.getMaxTokens()];
+        this.segmentDecoder = (tokens, from, to) -> tokenizer.decode(tokens, from, to, true);
+    }
+
+    /**
+     * Runs the three stages on their own threads and waits for all of them. The first error
+     * in any stage stops the others and is thrown here.
+     *
+     * @throws IOException if reading the audio or running the model failed, or the calling
+     *                     thread was interrupted
+     */
+    public void run() throws IOException {
+        final long start = System.nanoTime();
+        ByteBuffer[] inputBuffers = inference.getInputBuffers();
+        BlockingQueue<ByteBuffer> freeInputs = new ArrayBlockingQueue<>(inputBuffers.length);
+        freeInputs.addAll(Arrays.asList(inputBuffers));
+        BlockingQueue<int[]> freeTokens = new ArrayBlockingQueue<>(TOKEN_BUFFERS);
+        for (int i = 0; i < TOKEN_BUFFERS; i++) {
+            freeTokens.add(new int[inference.getMaxTokens()]);
+        }
+        BlockingQueue<Job> features = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        BlockingQueue<Job> outputs = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+        addStage("TranscriptionFeatures", () -> {
+            Job job;
+            do {
+                job = nextJob(freeInputs);
+                features.put(job);
+            } while (job != Job.END);
+        });
+        addStage("TranscriptionInference", () -> {
+            Job job;
+            do {
+                job = features.take();
+                if (job.speech) {
+                    job.tokens = freeTokens.take();
+                    job.tokenCount = infer(job.input, job.tokens);
+                    freeInputs.put(job.input);
+                    job.input = null;
+                }
+                outputs.put(job);
+            } while (job != Job.END);
+        });
+        addStage("TranscriptionPostprocess", () -> {
+            Job job;
+            while ((job = outputs.take()) != Job.END) {
+                postprocess(job);
+                if (job.tokens != null) {
+                    freeTokens.put(job.tokens);
+                }
+            }
+        });
+
+        for (Thread stage : stages) {
+            stage.start();
+        }
+        try {
+            for (Thread stage : stages) {
+                stage.join();
+            }
+        } catch (InterruptedException e) {
+            stopStages();
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while transcribing", e);
+        }
+
+        Throwable error = failure;
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        } else if (error instanceof RuntimeException) {
+            throw (RuntimeException) error;
+        } else if (error != null) {
+            throw new IOException("Transcription pipeline failed", error);
+        }
+        logStats("pipelined", System.nanoTime() - start);
+    }
+
+    /**
+     * Runs the stages one chunk at a time on the calling thread, with a single input buffer.
+     *
+     * @throws IOException if reading the audio or running the model failed
+     */
+    public void runSequential() throws IOException {
+        final long start = System.nanoTime();
+        ByteBuffer input = inference.getInputBuffers()[0];
+        AudioChunk chunk;
+        while ((chunk = nextChunk()) != null) {
+            Job job = prepare(chunk);
+            if (job.speech) {
+                extract(chunk, input);
+                job.tokens = inference.getTokens();
+                job.tokenCount = infer(input, job.tokens);
+            }
+            postprocess(job);
+        }
+        logStats("sequential", System.nanoTime() - start);
+    }
+
+    private interface Stage {
+        void run() throws Exception;
+    }
+
+    private void addStage(String name, Stage stage) {
+        Thread thread = new Thread(() -> {
+            try {
+                stage.run();
+            } catch (InterruptedException e) {
+                // Stopped because another stage failed
+            } catch (Throwable e) {
+                Log.e(TAG, "Error in " + Thread.currentThread().getName(), e);
+                synchronized (this) {
+                    if (failure == null) {
+                        failure = e;
+                    }
+                }
+                stopStages();
+            }
+        }, name);
+        stages.add(thread);
+    }
+
+    private void stopStages() {
+        for (Thread stage : stages) {
+            stage.interrupt();
+        }
+    }
+
+    private Job nextJob(BlockingQueue<ByteBuffer> freeInputs) throws IOException, InterruptedException {
+        AudioChunk chunk = nextChunk();
+        if (chunk == null) {
+            return Job.END;
+        }
+        Job job = prepare(chunk);
+        if (job.speech) {
+            // Waits while the inference stage still holds every buffer
+            ByteBuffer input = freeInputs.take();
+            extract(chunk, input);
+            job.input = input;
+        }
+        return job;
+    }
+
+    private AudioChunk nextChunk() throws IOException {
+        long start = System.nanoTime();
+        AudioChunk chunk = chunker.nextChunk();
+        featureNanos += System.nanoTime() - start;
+        return chunk;
+    }
+
+    private Job prepare(AudioChunk chunk) {
+        long start = System.nanoTime();
+        int i = chunk.getIndex();
+        listener.onChunkStarted(i, chunkCount);
+        Log.d(TAG, String.format("Chunk %d: start=%d, length=%d, overlap=%d",
+                i + 1, chunk.getStartSample(), chunk.getLength(), chunk.getOverlap()));
+        samplesTotal += chunk.getLength();
+
+        // Silent chunks are not worth an inference and tend to produce hallucinations
+        boolean speech = vad == null
+                || vad.containsSpeech(chunk.getBuffer(), chunk.getOffset(), chunk.getLength());
+        if (!speech) {
+            Log.d(TAG, "No speech detected, skipping chunk " + (i + 1));
+            chunksSkipped++;
+            samplesSkipped += chunk.getLength();
+        }
+        featureNanos += System.nanoTime() - start;
+        return new Job(i, chunk.getStartSample(), chunk.getLength(), chunk.getOverlap(), speech);
+    }
+
+    private void extract(AudioChunk chunk, ByteBuffer input) {
+        long start = System.nanoTime();
+        // Frames shared with the previous chunk's overlap are reused, not recomputed
+        input.rewind();
+        int frames = chunkFeatures.extract(chunk, input.asFloatBuffer());
+        Log.d(TAG, "Computed " + frames + " mel frames for chunk " + (chunk.getIndex() + 1));
+        featureNanos += System.nanoTime() - start;
+    }
+
+    private int infer(ByteBuffer input, int[] tokens) {
+        long start = System.nanoTime();
+        try {
+            // Timestamp tokens are kept, they place the text in the recording
+            return inference.run(input, tokens);
+        } catch (Exception e) {
+            Log.e(TAG, "Error processing audio chunk", e);
+            return 0;
+        } finally {
+            inferenceNanos += System.nanoTime() - start;
+        }
+    }
+
+    private void postprocess(Job job) {
+        long start = System.nanoTime();
+        if (!job.speech) {
+            assembler.addSilence();
+        } else {
+            int count = WhisperInference.textTokens(job.tokens, job.tokenCount, textTokens);
+            String transcript = tokenizer.decode(textTokens, 0, count, true);
+            Log.d(TAG, "Transcript for chunk " + (job.index + 1) + ": " + transcript);
+            List<TranscriptAssembler.Segment> segments = TranscriptAssembler.parseSegments(
+                    job.tokens, job.tokenCount, job.startSample, job.length, sampleRate, segmentDecoder);
+            // Chunks cut in a pause share no audio with the previous one and are just appended
+            assembler.add(job.startSample, job.overlap, transcript, segments);
+        }
+        String partialTranscript = assembler.getText();
+        postprocessNanos += System.nanoTime() - start;
+        listener.onProgress(partialTranscript, Math.min(1f, (float) job.index / chunkCount));
+    }
+
+    /**
+     * Average inference time of the chunks that went through the model, valid after a run.
+     *
+     * @return milliseconds, or -1 if every chunk was skipped
+     */
+    public long getInferenceMillisPerChunk() {
+        int inferred = chunker.getChunkCount() - chunksSkipped;
+        return inferred > 0 ? inferenceNanos / 1_000_000 / inferred : -1;
+    }
+
+    private void logStats(String mode, long wallNanos) {
+        int chunks = chunker.getChunkCount();
+        Log.d(TAG, String.format("Transcribed %d chunks (%.1f s audio) %s in %.2f s: features %.2f s, inference %.2f s, postprocess %.2f s",
+                chunks, samplesTotal / (float) sampleRate, mode, wallNanos / 1e9,
+                featureNanos / 1e9, inferenceNanos / 1e9, postprocessNanos / 1e9));
+        if (vad != null) {
+            Log.d(TAG, String.format("VAD skipped %d of %d inferences (%.1f%%), %.1f s of %.1f s audio, speech in %d of %d frames",
+                    chunksSkipped, chunks,
+                    chunks > 0 ? 100.0 * chunksSkipped / chunks : 0.0,
+                    samplesSkipped / (float) sampleRate, samplesTotal / (float) sampleRate,
+                    vad.getSpeechFrames(), vad.getFramesAnalyzed()));
+        }
+        Log.d(TAG, String.format("Chunk boundaries: %d stitched at timestamps, %d merged by text",
+                assembler.getStitchedBoundaries(), assembler.getMergedBoundaries()));
+    }
+}
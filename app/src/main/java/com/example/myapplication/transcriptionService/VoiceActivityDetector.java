@@ -0,0 +1,202 @@
+package com.example.myapplication.transcriptionService;
+
+import java.util.Arrays;
+
+/**
+ * Lightweight speech detector working on the same 10 ms hops as the mel frames. Each frame
+ * gets its energy in dB and its zero-crossing rate; a frame counts as speech when it stands
+ * far enough above the noise floor, or slightly above it with the high zero-crossing rate of
+ * unvoiced consonants. The noise floor is a low percentile of the frame energies, tracked
+ * over the whole recording: it follows a quieter chunk at once but rises only part of the
+ * way toward a louder one, so that a chunk of continuous speech is not mistaken for noise
+ * while the floor still recovers after a quiet stretch. Digital silence, like zeroed frames
+ * or decoder padding, says nothing about the room noise and is left out of the floor.
+ */
+public class VoiceActivityDetector {
+    // Anything quieter than this is silence regardless of the noise floor
+    private static final float MIN_SPEECH_DB = -60f;
+    private static final float SPEECH_MARGIN_DB = 12f;
+    private static final float FRICATIVE_MARGIN_DB = 6f;
+    private static final float FRICATIVE_ZCR = 0.25f;
+    // Percentile of a chunk's frame energies taken as its noise floor
+    private static final float FLOOR_PERCENTILE = 0.1f;
+    // Share of the way the floor rises toward a louder chunk's percentile
+    private static final float FLOOR_RISE = 0.3f;
+    // Frames quieter than this are digital silence, far below any microphone's noise
+    private static final float DIGITAL_SILENCE_DB = -90f;
+    // Speech needed for a chunk to be sent to the model, 200 ms
+    private static final int MIN_SPEECH_FRAMES = 20;
+    // Shortest quiet stretch a chunk may be cut in, 300 ms
+    private static final int PAUSE_FRAMES = 30;
+
+    private final int frameLength;
+    private float noiseFloorDb = Float.POSITIVE_INFINITY;
+    private float[] frameDb = new float[0];
+    private float[] frameZcr = new float[0];
+    private float[] sorted = new float[0];
+
+    private long framesAnalyzed;
+    private long speechFrames;
+
+    public VoiceActivityDetector(int frameLength) {
+        this.frameLength = frameLength;
+    }
+
+    /**
+     * Forgets the noise floor and statistics, must be called before a new recording.
+     */
+    public void reset() {
+        noiseFloorDb = Float.POSITIVE_INFINITY;
+        framesAnalyzed = 0;
+        speechFrames = 0;
+    }
+
+    /**
+     * Decides whether audio[offset, offset + length) contains enough speech to be worth
+     * transcribing, and updates the recording's noise floor.
+     *
+     * @param audio samples at the model's sample rate
+     * @param offset first sample of the chunk
+     * @param length number of samples in the chunk
+     * @return true if at least MIN_SPEECH_FRAMES frames are speech
+     */
+    public boolean containsSpeech(float[] audio, int offset, int length) {
+        int frames = analyze(audio, offset, length);
+        float floor = updateNoiseFloor(frames);
+
+        int speech = 0;
+        for (int k = 0; k < frames; k++) {
+            if (isSpeech(frameDb[k], frameZcr[k], floor)) {
+                speech++;
+            }
+        }
+        framesAnalyzed += frames;
+        speechFrames += speech;
+        return speech >= MIN_SPEECH_FRAMES;
+    }
+
+    /**
+     * Finds a pause inside audio[from, to) to cut a chunk at. Returns the sample index, a
+     * multiple of the frame length, in the middle of the quietest stretch of PAUSE_FRAMES
+     * frames, or -1 if no stretch is quiet enough to be a pause.
+     *
+     * @param audio samples at the model's sample rate
+     * @param from first sample to search
+     * @param to end of the search, exclusive
+     * @return sample index of the pause, or -1
+     */
+    public int findPause(float[] audio, int from, int to) {
+        from = (from + frameLength - 1) / frameLength * frameLength;
+        int frames = analyze(audio, from, to - from);
+        if (frames < PAUSE_FRAMES) {
+            return -1;
+        }
+
+        // Sliding sum of frame energies in dB over the pause window
+        float sum = 0f;
+        for (int k = 0; k < PAUSE_FRAMES; k++) {
+            sum += frameDb[k];
+        }
+        float bestSum = sum;
+        int bestStart = 0;
+        for (int k = PAUSE_FRAMES; k < frames; k++) {
+            sum += frameDb[k] - frameDb[k - PAUSE_FRAMES];
+            if (sum < bestSum) {
+                bestSum = sum;
+                bestStart = k - PAUSE_FRAMES + 1;
+            }
+        }
+
+        float floor = Math.min(noiseFloorDb, percentile(frames));
+        for (int k = bestStart; k < bestStart + PAUSE_FRAMES; k++) {
+            if (isSpeech(frameDb[k], frameZcr[k], floor)) {
+                return -1;
+            }
+        }
+        return from + (bestStart + PAUSE_FRAMES / 2) * frameLength;
+    }
+
+    private boolean isSpeech(float db, float zcr, float floor) {
+        if (db < MIN_SPEECH_DB) {
+            return false;
+        }
+        return db > floor + SPEECH_MARGIN_DB
+                || (db > floor + FRICATIVE_MARGIN_DB && zcr > FRICATIVE_ZCR);
+    }
+
+    /**
+     * Computes energy and zero-crossing rate of every whole frame in the range.
+     *
+     * @return number of frames
+     */
+    private int analyze(float[] audio, int offset, int length) {
+        final int frames = Math.max(0, length / frameLength);
+        if (frameDb.length < frames) {
+            frameDb = new float[frames];
+            frameZcr = new float[frames];
+        }
+
+        for (int k = 0; k < frames; k++) {
+            final int start = offset + k * frameLength;
+            float energy = 0f;
+            int crossings = 0;
+            float previous = audio[start];
+            for (int i = start; i < start + frameLength; i++) {
+                float sample = audio[i];
+                energy += sample * sample;
+                if ((sample >= 0f) != (previous >= 0f)) {
+                    crossings++;
+                }
+                previous = sample;
+            }
+            frameDb[k] = 10f * (float) Math.log10(energy / frameLength + 1e-10f);
+            frameZcr[k] = (float) crossings / frameLength;
+        }
+        return frames;
+    }
+
+    private float updateNoiseFloor(int frames) {
+        float chunkFloor = percentile(frames);
+        if (chunkFloor == Float.POSITIVE_INFINITY) {
+            // Nothing but digital silence, the floor stays as it is
+            return noiseFloorDb;
+        }
+        if (noiseFloorDb == Float.POSITIVE_INFINITY || chunkFloor < noiseFloorDb) {
+            noiseFloorDb = chunkFloor;
+        } else {
+            noiseFloorDb += FLOOR_RISE * (chunkFloor - noiseFloorDb);
+        }
+        return noiseFloorDb;
+    }
+
+    /**
+     * Low percentile of the energies of the analyzed frames, leaving out digital silence.
+     *
+     * @param frames number of analyzed frames
+     * @return the percentile in dB, or positive infinity if no frame is above digital silence
+     */
+    private float percentile(int frames) {
+        if (sorted.length < frames) {
+            sorted = new float[frames];
+        }
+        int count = 0;
+        for (int k = 0; k < frames; k++) {
+            if (frameDb[k] >= DIGITAL_SILENCE_DB) {
+                sorted[count++] = frameDb[k];
+            }
+        }
+        if (count == 0) {
+            return Float.POSITIVE_INFINITY;
+        }
+        Arrays.sort(sorted, 0, count);
+        return sorted[(int) (FLOOR_PERCENTILE * (count - 1))];
+    }
+
+    public long getFramesAnalyzed() {
+        return framesAnalyzed;
+    }
+
+    public long getSpeechFrames() {
+        return speechFrames;
+    }
+}
@@ -0,0 +1,132 @@
+package com.example.myapplication.transcriptionService;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Runs the Whisper model without allocating per chunk. The direct input buffers, the direct
+ * output buffer and the argument array and map passed to the interpreter are created once
+ * per loaded model; every run only rewinds them and copies the output token IDs into a
+ * primitive array the caller owns.
+ */
+public class WhisperInference {
+    static final int END_OF_TEXT = 50257;
+    // Tokens from <|startoftranscript|> on are special tokens or timestamps
+    static final int TEXT_TOKEN_LIMIT = 50258;
+
+    /**
+     * The interpreter call, Interpreter::runForMultipleInputsOutputs in the app.
+     */
+    interface Runner {
+        void run(Object[] inputs, Map<Integer, Object> outputs);
+    }
+
+    private final Runner runner;
+    private final int maxTokens;
+    private final ByteBuffer[] inputBuffers;
+    private final ByteBuffer outputBuffer;
+    private final IntBuffer outputTokens;
+    private final Object[] inputs = new Object[1];
+    private final Map<Integer, Object> outputs = new HashMap<>();
+    private final int[] tokens;
+
+    private long runs;
+
+    /**
+     * @param runner runs the model, the interpreter in the app
+     * @param inputBytes size of the model's input tensor
+     * @param maxTokens length of the model's output token sequence
+     * @param inputSlots number of input buffers, so that one can be filled while another is in the model
+     */
+    WhisperInference(Runner runner, int inputBytes, int maxTokens, int inputSlots) {
+        this.runner = runner;
+        this.maxTokens = maxTokens;
+        this.inputBuffers = new ByteBuffer[inputSlots];
+        for (int i = 0; i < inputSlots; i++) {
+            inputBuffers[i] = ByteBuffer.allocateDirect(inputBytes).order(ByteOrder.nativeOrder());
+        }
+        this.outputBuffer = ByteBuffer.allocateDirect(4 * maxTokens).order(ByteOrder.nativeOrder());
+        this.outputTokens = outputBuffer.asIntBuffer();
+        this.tokens = new int[maxTokens];
+        outputs.put(0, outputBuffer);
+    }
+
+    /**
+     * Runs the model on one of the input buffers and copies the output tokens up to
+     * <|endoftext|> into tokens.
+     *
+     * @param input a buffer from getInputBuffers(), filled with the log-mel features
+     * @param tokens receives the token IDs, at least getMaxTokens() long
+     * @return number of tokens
+     */
+    public int run(ByteBuffer input, int[] tokens) {
+        input.rewind();
+        outputBuffer.rewind();
+        inputs[0] = input;
+        try {
+            runner.run(inputs, outputs);
+        } finally {
+            inputs[0] = null;
+        }
+        runs++;
+
+        int count = 0;
+        while (count < maxTokens) {
+            int token = outputTokens.get(count);
+            if (token == END_OF_TEXT) {
+                break;
+            }
+            tokens[count++] = token;
+        }
+        return count;
+    }
+
+    /**
+     * Same as run(input, tokens) into an array owned by this object, valid until the next run.
+     *
+     * @param input one of getInputBuffers(), filled with the features
+     * @return number of tokens in getTokens()
+     */
+    public int run(ByteBuffer input) {
+        return run(input, tokens);
+    }
+
+    /**
+     * This function copies the text tokens of tokens[0, length) into text, dropping special
+     * and timestamp tokens.
+     *
+     * @param tokens output tokens of the model
+     * @param length number of valid tokens
+     * @param text receives the text tokens, at least length long
+     * @return number of text tokens
+     */
+    public static int textTokens(int[] tokens, int length, int[] text) {
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            int token = tokens[i];
+            if (token >= 0 && token < TEXT_TOKEN_LIMIT) {
+                text[count++] = token;
+            }
+        }
+        return count;
+    }
+
+    public ByteBuffer[] getInputBuffers() {
+        return inputBuffers;
+    }
+
+    public int[] getTokens() {
+        return tokens;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public long getRuns() {
+        return runs;
+    }
+}
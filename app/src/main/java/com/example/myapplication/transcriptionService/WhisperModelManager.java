@@ -0,0 +1,342 @@
+package com.example.myapplication.transcriptionService;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.os.BatteryManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.PowerManager;
+import android.os.SystemClock;
+import android.util.Log;
+
+import org.json.JSONException;
+import org.tensorflow.lite.Interpreter;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the Whisper interpreter and tokenizer loaded for the whole process, so that
+ * consecutive transcriptions do not map the model and parse the vocabulary again even
+ * though the service is stopped after every job. The model is loaded on the first
+ * acquire() and released once nobody has used it for the idle timeout, or right away when
+ * the system reports memory pressure.
+ * Which Whisper variant is loaded depends on the recording, see selectModel(). Only one
+ * variant is kept in memory, acquiring another one replaces it once it is unused.
+ */
+public class WhisperModelManager {
+    private static final String TAG = "WhisperModelManager";
+    // One input is filled while the other is in the model
+    private static final int INPUT_SLOTS = 2;
+
+    /**
+     * A loaded model, only valid between acquire() and release().
+     */
+    public static final class Model {
+        public final WhisperModelSpec spec;
+        public final Interpreter interpreter;
+        public final WhisperInference inference;
+        public final WhisperTokenizer tokenizer;
+
+        Model(WhisperModelSpec spec, Interpreter interpreter, WhisperInference inference,
+              WhisperTokenizer tokenizer) {
+            this.spec = spec;
+            this.interpreter = interpreter;
+            this.inference = inference;
+            this.tokenizer = tokenizer;
+        }
+    }
+
+    private final Context context;
+    private final float inputSeconds;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final Runnable evictIdle = this::evictIfIdle;
+    private long idleTimeoutMs;
+
+    private final Object loadLock = new Object();
+    private WhisperModelRegistry registry;
+    // Per variant, they hold the measured inference times
+    private final Map<String, InterpreterTuner> tuners = new HashMap<>();
+    private Model model;
+    private volatile InterpreterTuner tuner;
+    private int users;
+    private boolean loading;
+    private boolean evictOnRelease;
+
+    private long lastLoadMillis;
+    private int hits;
+    private int misses;
+    private int evictions;
+
+    /**
+     * @param context any context, the application context is kept
+     * @param inputSeconds length of audio one inference covers
+     * @param idleTimeoutMs how long an unused model stays loaded
+     */
+    public WhisperModelManager(Context context, float inputSeconds, long idleTimeoutMs) {
+        this.context = context.getApplicationContext();
+        this.inputSeconds = inputSeconds;
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Same as acquire(spec) for the registry's default variant.
+     *
+     * @return the loaded default variant
+     * @throws IOException if the model or tokenizer cannot be loaded
+     */
+    public Model acquire() throws IOException {
+        return acquire(getRegistry().getDefault());
+    }
+
+    /**
+     * Returns the given variant, loading it first if needed. Loading can take a while, and
+     * the first load on a device also benchmarks the interpreter options, so this must not
+     * be called on the main thread. Every call must be matched by release().
+     * A different variant that is still in use is returned instead, holding two models in
+     * memory is not worth the faster one.
+     *
+     * @param spec a variant from getRegistry()
+     * @return the loaded model, spec or the variant still in use
+     * @throws IOException if the model or tokenizer cannot be loaded
+     */
+    public Model acquire(WhisperModelSpec spec) throws IOException {
+        // Loading happens outside the state lock, so that onTrimMemory never waits for it
+        synchronized (loadLock) {
+            synchronized (this) {
+                handler.removeCallbacks(evictIdle);
+                if (model != null && (model.spec == spec || users > 0)) {
+                    if (model.spec != spec) {
+                        Log.d(TAG, model.spec.name + " is in use, not switching to " + spec.name);
+                    }
+                    hits++;
+                    users++;
+                    Log.d(TAG, getStats());
+                    return model;
+                }
+                if (model != null) {
+                    Log.d(TAG, "Switching from " + model.spec.name + " to " + spec.name);
+                    evict();
+                }
+                loading = true;
+            }
+
+            long start = SystemClock.elapsedRealtime();
+            Model loaded;
+            try {
+                loaded = load(spec);
+            } finally {
+                synchronized (this) {
+                    loading = false;
+                }
+            }
+            synchronized (this) {
+                misses++;
+                lastLoadMillis = SystemClock.elapsedRealtime() - start;
+                model = loaded;
+                users++;
+                Log.d(TAG, "Model loaded in " + lastLoadMillis + " ms, " + getStats());
+                return model;
+            }
+        }
+    }
+
+    /**
+     * Gives the model back, it is evicted once it stays unused for the idle timeout.
+     */
+    public synchronized void release() {
+        if (users == 0) {
+            return;
+        }
+        users--;
+        if (users == 0) {
+            if (evictOnRelease) {
+                evict();
+            } else {
+                handler.postDelayed(evictIdle, idleTimeoutMs);
+            }
+        }
+    }
+
+    private Model load(WhisperModelSpec spec) throws IOException {
+        Log.d(TAG, "Loading TFLite model " + spec + "...");
+        MappedByteBuffer modelBuffer = getRegistry().map(spec);
+        tuner = getTuner(spec);
+        InterpreterTuner.Profile profile = tuner.getProfile(modelBuffer);
+        for (InterpreterTuner.Result result : tuner.getResults()) {
+            Log.d(TAG, "Interpreter profile " + result);
+        }
+        Log.d(TAG, "Using interpreter profile: " + profile);
+        Interpreter interpreter = new Interpreter(modelBuffer, profile.toOptions());
+
+        // Log model input/output shapes
+        int[] inputShape = interpreter.getInputTensor(0).shape();
+        int[] outputShape = interpreter.getOutputTensor(0).shape();
+        Log.d(TAG, "Model input shape: " + Arrays.toString(inputShape));
+        Log.d(TAG, "Model output shape: " + Arrays.toString(outputShape));
+        if (!spec.matches(inputShape, interpreter.getInputTensor(0).dataType().name(), true)
+                || !spec.matches(outputShape, interpreter.getOutputTensor(0).dataType().name(), false)) {
+            interpreter.close();
+            throw new IOException(spec + " does not match its contract in the model registry");
+        }
+        // Buffers for every inference of this model are allocated here, once
+        WhisperInference inference = new WhisperInference(interpreter::runForMultipleInputsOutputs,
+                interpreter.getInputTensor(0).numBytes(), outputShape[outputShape.length - 1], INPUT_SLOTS);
+
+        Log.d(TAG, "Initializing tokenizer...");
+        WhisperTokenizer tokenizer;
+        try {
+            tokenizer = new WhisperTokenizer(context.getAssets());
+        } catch (IOException | JSONException | RuntimeException e) {
+            interpreter.close();
+            throw new IOException("Error loading tokenizer", e);
+        }
+        return new Model(spec, interpreter, inference, tokenizer);
+    }
+
+    /**
+     * The installed Whisper variants, read on first use.
+     *
+     * @return the registry, loaded once per process
+     * @throws IOException if the registry cannot be read or no variant is installed
+     */
+    public synchronized WhisperModelRegistry getRegistry() throws IOException {
+        if (registry == null) {
+            registry = WhisperModelRegistry.load(context);
+        }
+        return registry;
+    }
+
+    private synchronized InterpreterTuner getTuner(WhisperModelSpec spec) throws IOException {
+        InterpreterTuner tuner = tuners.get(spec.name);
+        if (tuner == null) {
+            tuner = new InterpreterTuner(context, spec.file, getRegistry().getModelBytes(spec), inputSeconds);
+            tuners.put(spec.name, tuner);
+        }
+        return tuner;
+    }
+
+    /**
+     * This function picks the variant to transcribe a recording with, from its length, the
+     * inference times measured on this device and the battery and thermal state.
+     *
+     * @param recordingMillis length of the recording, 0 or less if unknown
+     * @param chunkCount number of model inferences the recording needs
+     * @return the variant to acquire
+     * @throws IOException if the registry cannot be read
+     */
+    public WhisperModelSpec selectModel(long recordingMillis, int chunkCount) throws IOException {
+        WhisperModelRegistry registry = getRegistry();
+        if (recordingMillis <= 0) {
+            return registry.getDefault();
+        }
+        BatteryManager battery = context.getSystemService(BatteryManager.class);
+        PowerManager power = context.getSystemService(PowerManager.class);
+        WhisperModelSelector.Conditions conditions = new WhisperModelSelector.Conditions(
+                recordingMillis / 1000f, chunkCount,
+                battery != null ? battery.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY) : 100,
+                battery == null || battery.isCharging(),
+                power != null && power.isPowerSaveMode(),
+                power != null ? power.getCurrentThermalStatus() : PowerManager.THERMAL_STATUS_NONE);
+
+        WhisperModelSelector.Selection selection = WhisperModelSelector.select(registry.getModels(),
+                registry.getDefault(), spec -> {
+                    try {
+                        return getTuner(spec).getChunkMillis();
+                    } catch (IOException e) {
+                        return -1;
+                    }
+                }, conditions);
+        Log.d(TAG, "Selected " + selection + " for " + conditions);
+        return selection.getSpec();
+    }
+
+    /**
+     * This function stores the inference time per chunk of a finished transcription, the
+     * next selections rely on it.
+     *
+     * @param spec variant the transcription ran on
+     * @param millis average inference time per chunk, ignored if 0 or less
+     */
+    public void recordChunkMillis(WhisperModelSpec spec, long millis) {
+        try {
+            getTuner(spec).recordChunkMillis(millis);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not record the chunk time of " + spec, e);
+        }
+    }
+
+    /**
+     * Releases the model under memory pressure, or once the current job is done if it is in
+     * use. Hiding the UI alone does not count, transcriptions keep running in the background.
+     *
+     * @param level the level passed to onTrimMemory
+     */
+    public synchronized void onTrimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW
+                || level == ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            return;
+        }
+        Log.d(TAG, "Memory pressure, level " + level);
+        if (users > 0 || loading) {
+            evictOnRelease = true;
+        } else {
+            evict();
+        }
+    }
+
+    private synchronized void evictIfIdle() {
+        if (users == 0) {
+            evict();
+        }
+    }
+
+    private void evict() {
+        handler.removeCallbacks(evictIdle);
+        evictOnRelease = false;
+        if (model == null) {
+            return;
+        }
+        model.interpreter.close();
+        model = null;
+        evictions++;
+        Log.d(TAG, "Model evicted, " + getStats());
+    }
+
+    public synchronized void setIdleTimeout(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Benchmark results of the interpreter profiles on this device, empty before the model
+     * has been loaded once.
+     *
+     * @return one result per benchmarked profile of the loaded model
+     */
+    public List<InterpreterTuner.Result> getInterpreterBenchmarks() {
+        InterpreterTuner tuner = this.tuner;
+        return tuner != null ? tuner.getResults() : Collections.emptyList();
+    }
+
+    public synchronized long getLastLoadMillis() {
+        return lastLoadMillis;
+    }
+
+    public synchronized int getHits() {
+        return hits;
+    }
+
+    public synchronized int getMisses() {
+        return misses;
+    }
+
+    public synchronized String getStats() {
+        return String.format("Model cache: %d hits, %d misses, %d evictions, last load %d ms, %s",
+                hits, misses, evictions, lastLoadMillis, model != null ? "loaded" : "not loaded");
+    }
+}
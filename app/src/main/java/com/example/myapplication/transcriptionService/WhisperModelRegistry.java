@@ -0,0 +1,195 @@
+package com.example.myapplication.transcriptionService;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The Whisper variants the app can transcribe with, read from whisper_models.json. The
+ * registry and the model files are looked up in the models directory of the app's files
+ * first, where downloaded models go, and then in the assets. Variants whose file is missing
+ * or whose contract does not match the pipeline's log-mel input and token output are left
+ * out.
+ */
+public class WhisperModelRegistry {
+    private static final String TAG = "WhisperModelRegistry";
+    static final String REGISTRY_FILE = "whisper_models.json";
+    static final String MODELS_DIR = "models";
+    // What the pipeline feeds the model: one window of 80 mel bins by 3000 frames
+    private static final int[] FEATURE_SHAPE = {1, 80, 3000};
+    private static final String FEATURE_TYPE = "float32";
+    private static final String TOKEN_TYPE = "int32";
+
+    private final AssetManager assets;
+    private final File modelsDir;
+    private final List<WhisperModelSpec> models;
+    private final WhisperModelSpec defaultModel;
+
+    private WhisperModelRegistry(AssetManager assets, File modelsDir, List<WhisperModelSpec> models,
+                                 WhisperModelSpec defaultModel) {
+        this.assets = assets;
+        this.modelsDir = modelsDir;
+        this.models = models;
+        this.defaultModel = defaultModel;
+    }
+
+    /**
+     * This function reads the registry and keeps the variants that are installed and usable.
+     *
+     * @param context context to read the assets and files with
+     * @return the registry with at least one variant
+     * @throws IOException if the registry cannot be read or no variant is available
+     */
+    public static WhisperModelRegistry load(Context context) throws IOException {
+        AssetManager assets = context.getAssets();
+        File modelsDir = new File(context.getFilesDir(), MODELS_DIR);
+        List<WhisperModelSpec> models = new ArrayList<>();
+        String defaultName;
+        try {
+            JSONObject registry = new JSONObject(readRegistry(assets, modelsDir));
+            defaultName = registry.optString("default", null);
+            JSONArray entries = registry.getJSONArray("models");
+            for (int i = 0; i < entries.length(); i++) {
+                WhisperModelSpec spec = parse(entries.getJSONObject(i));
+                if (!isSupported(spec)) {
+                    Log.w(TAG, "Skipping " + spec + ", unsupported input " + Arrays.toString(spec.inputShape)
+                            + " " + spec.inputType + " or output " + spec.outputType);
+                } else if (getModelBytes(assets, modelsDir, spec) <= 0) {
+                    Log.d(TAG, "Skipping " + spec + ", not installed");
+                } else {
+                    models.add(spec);
+                }
+            }
+        } catch (JSONException e) {
+            throw new IOException("Invalid model registry", e);
+        }
+        if (models.isEmpty()) {
+            throw new IOException("No Whisper model available");
+        }
+
+        WhisperModelSpec defaultModel = models.get(0);
+        for (WhisperModelSpec spec : models) {
+            if (spec.name.equals(defaultName)) {
+                defaultModel = spec;
+            }
+        }
+        Log.d(TAG, "Available models: " + models + ", default " + defaultModel.name);
+        return new WhisperModelRegistry(assets, modelsDir, Collections.unmodifiableList(models), defaultModel);
+    }
+
+    private static String readRegistry(AssetManager assets, File modelsDir) throws IOException {
+        File downloaded = new File(modelsDir, REGISTRY_FILE);
+        try (InputStream is = downloaded.isFile() ? new FileInputStream(downloaded) : assets.open(REGISTRY_FILE)) {
+            byte[] buffer = new byte[is.available()];
+            int read = 0;
+            while (read < buffer.length) {
+                int n = is.read(buffer, read, buffer.length - read);
+                if (n < 0) {
+                    break;
+                }
+                read += n;
+            }
+            return new String(buffer, 0, read, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static WhisperModelSpec parse(JSONObject entry) throws JSONException {
+        JSONObject input = entry.getJSONObject("input");
+        JSONObject output = entry.getJSONObject("output");
+        return new WhisperModelSpec(entry.getString("name"), entry.getString("file"),
+                entry.optInt("quality", 0), entry.optDouble("relative_cost", 1.0),
+                parseShape(input.getJSONArray("shape")), input.getString("type"),
+                parseShape(output.getJSONArray("shape")), output.getString("type"));
+    }
+
+    private static int[] parseShape(JSONArray array) throws JSONException {
+        int[] shape = new int[array.length()];
+        for (int i = 0; i < shape.length; i++) {
+            shape[i] = array.getInt(i);
+        }
+        return shape;
+    }
+
+    private static boolean isSupported(WhisperModelSpec spec) {
+        return Arrays.equals(spec.inputShape, FEATURE_SHAPE)
+                && FEATURE_TYPE.equalsIgnoreCase(spec.inputType)
+                && TOKEN_TYPE.equalsIgnoreCase(spec.outputType)
+                && spec.outputShape.length > 0;
+    }
+
+    private static long getModelBytes(AssetManager assets, File modelsDir, WhisperModelSpec spec) {
+        File downloaded = new File(modelsDir, spec.file);
+        if (downloaded.isFile()) {
+            return downloaded.length();
+        }
+        try (AssetFileDescriptor fileDescriptor = assets.openFd(spec.file)) {
+            return fileDescriptor.getLength();
+        } catch (IOException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Size of the variant's model file, so that a replaced file is told apart.
+     *
+     * @param spec a variant of this registry
+     * @return size in bytes, or -1 if the file is missing
+     */
+    public long getModelBytes(WhisperModelSpec spec) {
+        return getModelBytes(assets, modelsDir, spec);
+    }
+
+    /**
+     * This function maps the variant's model file into memory.
+     *
+     * @param spec a variant of this registry
+     * @return the model file, read-only
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public MappedByteBuffer map(WhisperModelSpec spec) throws IOException {
+        File downloaded = new File(modelsDir, spec.file);
+        if (downloaded.isFile()) {
+            try (FileInputStream inputStream = new FileInputStream(downloaded)) {
+                FileChannel fileChannel = inputStream.getChannel();
+                return fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, fileChannel.size());
+            }
+        }
+        try (AssetFileDescriptor fileDescriptor = assets.openFd(spec.file);
+             FileInputStream inputStream = new FileInputStream(fileDescriptor.getFileDescriptor())) {
+            FileChannel fileChannel = inputStream.getChannel();
+            long startOffset = fileDescriptor.getStartOffset();
+            long declaredLength = fileDescriptor.getDeclaredLength();
+            return fileChannel.map(FileChannel.MapMode.READ_ONLY, startOffset, declaredLength);
+        }
+    }
+
+    /**
+     * The available variants, in registry order.
+     *
+     * @return unmodifiable list of the variants
+     */
+    public List<WhisperModelSpec> getModels() {
+        return models;
+    }
+
+    public WhisperModelSpec getDefault() {
+        return defaultModel;
+    }
+}
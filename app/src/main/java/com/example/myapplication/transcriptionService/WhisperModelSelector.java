@@ -0,0 +1,175 @@
+package com.example.myapplication.transcriptionService;
+
+import java.util.List;
+
+/**
+ * Picks the Whisper variant for a recording. Every recording gets a time budget: a short
+ * note should be done within a few seconds, a long one may take a share of its own length.
+ * The most accurate variant whose expected transcription time fits the budget wins, and the
+ * fastest one if none fits. On low battery, in battery saver or when the device is hot the
+ * fastest variant is used regardless of the length.
+ * Expected times come from the inference time per chunk measured on this device. A variant
+ * that has not been measured yet is estimated from a measured one scaled by the relative
+ * costs in the registry, and with no measurement at all the registry's default is used.
+ */
+public final class WhisperModelSelector {
+    // Same values as PowerManager.THERMAL_STATUS_MODERATE and THERMAL_STATUS_SEVERE
+    static final int THERMAL_MODERATE = 2;
+    static final int THERMAL_SEVERE = 3;
+    // Budget of any recording, short notes should feel instant
+    private static final float INSTANT_SECONDS = 10f;
+    // Longer recordings may take this share of their length
+    private static final float LONG_RECORDING_SHARE = 0.25f;
+    private static final int LOW_BATTERY_PERCENT = 20;
+    // Expected slowdown of a throttled CPU
+    private static final float THROTTLED_SLOWDOWN = 1.5f;
+
+    /**
+     * The recording and the device state a variant is picked for.
+     */
+    public static final class Conditions {
+        final float recordingSeconds;
+        final int chunkCount;
+        final int batteryPercent;
+        final boolean charging;
+        final boolean powerSave;
+        final int thermalStatus;
+
+        /**
+         * @param recordingSeconds length of the recording
+         * @param chunkCount number of model inferences the recording needs
+         * @param batteryPercent battery level from 0 to 100
+         * @param charging whether the device is plugged in
+         * @param powerSave whether battery saver is on
+         * @param thermalStatus one of the PowerManager.THERMAL_STATUS_* values
+         */
+        public Conditions(float recordingSeconds, int chunkCount, int batteryPercent, boolean charging,
+                          boolean powerSave, int thermalStatus) {
+            this.recordingSeconds = recordingSeconds;
+            this.chunkCount = chunkCount;
+            this.batteryPercent = batteryPercent;
+            this.charging = charging;
+            this.powerSave = powerSave;
+            this.thermalStatus = thermalStatus;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%.0f s audio, %d chunks, battery %d%%%s%s, thermal %d",
+                    recordingSeconds, chunkCount, batteryPercent, charging ? " charging" : "",
+                    powerSave ? " saver" : "", thermalStatus);
+        }
+    }
+
+    /**
+     * Measured inference time of one chunk.
+     */
+    public interface ChunkTimes {
+        /**
+         * @param spec the variant
+         * @return milliseconds, or -1 if the variant has not been measured on this device
+         */
+        long getChunkMillis(WhisperModelSpec spec);
+    }
+
+    /**
+     * The picked variant and why.
+     */
+    public static final class Selection {
+        final WhisperModelSpec spec;
+        // Negative if nothing was measured
+        final double estimatedSeconds;
+        final double budgetSeconds;
+        final String reason;
+
+        Selection(WhisperModelSpec spec, double estimatedSeconds, double budgetSeconds, String reason) {
+            this.spec = spec;
+            this.estimatedSeconds = estimatedSeconds;
+            this.budgetSeconds = budgetSeconds;
+            this.reason = reason;
+        }
+
+        public WhisperModelSpec getSpec() {
+            return spec;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s, %s, estimate %.1f s of %.1f s budget",
+                    spec.name, reason, estimatedSeconds, budgetSeconds);
+        }
+    }
+
+    private WhisperModelSelector() {
+    }
+
+    /**
+     * This function picks the variant to transcribe a recording with.
+     *
+     * @param models available variants, not empty
+     * @param fallback variant to use while nothing has been measured
+     * @param times measured inference times
+     * @param conditions the recording and the device state
+     * @return the variant and why it was picked
+     */
+    public static Selection select(List<WhisperModelSpec> models, WhisperModelSpec fallback,
+                                   ChunkTimes times, Conditions conditions) {
+        double budget = Math.max(INSTANT_SECONDS, conditions.recordingSeconds * LONG_RECORDING_SHARE);
+
+        // Any measured variant serves as the reference for the unmeasured ones
+        WhisperModelSpec reference = null;
+        long referenceMillis = -1;
+        for (WhisperModelSpec spec : models) {
+            long millis = times.getChunkMillis(spec);
+            if (millis > 0) {
+                reference = spec;
+                referenceMillis = millis;
+                break;
+            }
+        }
+        if (reference == null) {
+            return new Selection(fallback, -1, budget, "not measured yet");
+        }
+
+        double slowdown = conditions.thermalStatus >= THERMAL_MODERATE ? THROTTLED_SLOWDOWN : 1;
+        double[] estimates = new double[models.size()];
+        WhisperModelSpec fastest = null;
+        double fastestEstimate = 0;
+        for (int i = 0; i < estimates.length; i++) {
+            WhisperModelSpec spec = models.get(i);
+            long millis = times.getChunkMillis(spec);
+            double chunkSeconds = millis > 0
+                    ? millis / 1000.0
+                    : referenceMillis / 1000.0 * spec.relativeCost / reference.relativeCost;
+            estimates[i] = conditions.chunkCount * chunkSeconds * slowdown;
+            if (fastest == null || estimates[i] < fastestEstimate) {
+                fastest = spec;
+                fastestEstimate = estimates[i];
+            }
+        }
+
+        if (conditions.powerSave) {
+            return new Selection(fastest, fastestEstimate, budget, "battery saver");
+        }
+        if (!conditions.charging && conditions.batteryPercent <= LOW_BATTERY_PERCENT) {
+            return new Selection(fastest, fastestEstimate, budget, "low battery");
+        }
+        if (conditions.thermalStatus >= THERMAL_SEVERE) {
+            return new Selection(fastest, fastestEstimate, budget, "device hot");
+        }
+
+        WhisperModelSpec best = null;
+        double bestEstimate = 0;
+        for (int i = 0; i < estimates.length; i++) {
+            WhisperModelSpec spec = models.get(i);
+            if (estimates[i] <= budget && (best == null || spec.quality > best.quality)) {
+                best = spec;
+                bestEstimate = estimates[i];
+            }
+        }
+        if (best == null) {
+            return new Selection(fastest, fastestEstimate, budget, "nothing fits the budget");
+        }
+        return new Selection(best, bestEstimate, budget, "most accurate within budget");
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.myapplication.transcriptionService;
+
+import java.util.Arrays;
+
+/**
+ * One Whisper variant listed in the model registry, with the tensor contract the
+ * transcription pipeline relies on.
+ */
+public final class WhisperModelSpec {
+    final String name;
+    final String file;
+    // Higher is more accurate
+    final int quality;
+    // Inference time relative to the other variants, used until this one has been measured
+    final double relativeCost;
+    final int[] inputShape;
+    final String inputType;
+    final int[] outputShape;
+    final String outputType;
+
+    WhisperModelSpec(String name, String file, int quality, double relativeCost,
+                     int[] inputShape, String inputType, int[] outputShape, String outputType) {
+        this.name = name;
+        this.file = file;
+        this.quality = quality;
+        this.relativeCost = relativeCost;
+        this.inputShape = inputShape;
+        this.inputType = inputType;
+        this.outputShape = outputShape;
+        this.outputType = outputType;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getFile() {
+        return file;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    /**
+     * This function checks a tensor of the loaded model against the contract.
+     *
+     * @param shape shape of the tensor
+     * @param type name of the tensor's data type, like FLOAT32
+     * @param input whether to check against the input or the output contract
+     * @return true if shape and type match
+     */
+    boolean matches(int[] shape, String type, boolean input) {
+        return Arrays.equals(shape, input ? inputShape : outputShape)
+                && type.equalsIgnoreCase(input ? inputType : outputType);
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + file + ")";
+    }
+}
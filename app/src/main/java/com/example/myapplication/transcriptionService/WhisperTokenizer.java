@@ -19,6 +19,9 @@ public class WhisperTokenizer {
     private Map<String, Integer> vocab;
     private Map<Integer, String> reverseVocab;
     private Set<Integer> specialTokensIds;
+    // Same as reverseVocab and specialTokensIds, indexed by token ID to decode without boxing
+    private String[] tokensById;
+    private boolean[] specialById;
     private JSONObject normalizerConfig;
     private List<Pair<String, String>> bpeMerges;
     private Map<Pair<String, String>, Integer> bpeRanks;
@@ -69,6 +72,19 @@ public class WhisperTokenizer {
         }
         Log.d(TAG, "Loaded " + specialTokensIds.size() + " special tokens.");
 
+        int maxId = -1;
+        for (int tokenId : reverseVocab.keySet()) {
+            maxId = Math.max(maxId, tokenId);
+        }
+        tokensById = new String[maxId + 1];
+        specialById = new boolean[maxId + 1];
+        for (Map.Entry<Integer, String> entry : reverseVocab.entrySet()) {
+            if (entry.getKey() >= 0) {
+                tokensById[entry.getKey()] = entry.getValue();
+                specialById[entry.getKey()] = specialTokensIds.contains(entry.getKey());
+            }
+        }
+
         // Load normalizer config
         try {
             String normalizerJson = readAsset("normalizer.json");
@@ -104,22 +120,40 @@ public class WhisperTokenizer {
     }
 
     public String decode(List<Integer> tokenIds, boolean skipSpecialTokens) {
-        List<String> detokenizedTokens = new ArrayList<>();
+        int[] ids = new int[tokenIds.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = tokenIds.get(i);
+        }
+        return decode(ids, 0, ids.length, skipSpecialTokens);
+    }
+
+    /**
+     * Decodes tokenIds[from, to) without boxing the IDs.
+     *
+     * @param tokenIds token IDs
+     * @param from first token to decode
+     * @param to end of the tokens, exclusive
+     * @param skipSpecialTokens whether to leave out special tokens
+     * @return the decoded text
+     */
+    public String decode(int[] tokenIds, int from, int to, boolean skipSpecialTokens) {
+        StringBuilder detokenizedTokens = new StringBuilder();
 
-        for (Integer tokenId : tokenIds) {
-            String token = reverseVocab.get(tokenId);
+        for (int i = from; i < to; i++) {
+            int tokenId = tokenIds[i];
+            String token = tokenId >= 0 && tokenId < tokensById.length ? tokensById[tokenId] : null;
             if (token != null) {
-                if (skipSpecialTokens && specialTokensIds.contains(tokenId)) {
+                if (skipSpecialTokens && specialById[tokenId]) {
                     continue;
                 }
-                detokenizedTokens.add(token);
+                detokenizedTokens.append(token);
             } else {
-                detokenizedTokens.add(String.format("[UNK_ID:%d]", tokenId));
+                detokenizedTokens.append(String.format("[UNK_ID:%d]", tokenId));
             }
         }
 
         // Handle spaces - replace 'Ġ' with a space
-        String text = String.join("", detokenizedTokens).replace("Ġ", " ").trim();
+        String text = detokenizedTokens.toString().replace("Ġ", " ").trim();
 
         // Apply BPE reverse merges if available
         if (bpeMerges != null) {
@@ -2,9 +2,8 @@ package com.example.myapplication.ui.dashboard;
 
 import static android.Manifest.permission.POST_NOTIFICATIONS;
 
-import android.content.Intent;
+import android.annotation.SuppressLint;
 import android.media.MediaMetadataRetriever;
-import android.media.MediaRecorder;
 import android.os.Bundle;
 import android.text.Editable;
 import android.text.TextWatcher;
@@ -33,8 +32,10 @@ import com.example.myapplication.database.AppDatabase;
 import com.example.myapplication.database.AttachmentsDao;
 import com.example.myapplication.database.IdeasDao;
 import com.example.myapplication.database.Ideas_table;
+import com.example.myapplication.database.TranscriptionJobs_table;
 import com.example.myapplication.R;
 import com.example.myapplication.databinding.FragmentDashboardBinding;
+import com.example.myapplication.recording.SpeechRecorder;
 import com.example.myapplication.transcriptionService.TranscribeService;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.button.MaterialButton;
@@ -45,8 +46,11 @@ import java.util.Date;
 import java.util.concurrent.CompletableFuture;
 
 public class DashboardFragment extends Fragment {
+    // Keep the raw 16 kHz PCM next to each recording until it is transcribed, so that
+    // transcription can skip decoding
+    private static final boolean WRITE_PCM_SIDECAR = true;
     private FragmentDashboardBinding binding;
-    private MediaRecorder mediaRecorder;
+    private SpeechRecorder speechRecorder;
     boolean commitButtonIsRecord = true;
     String audioFilePath;
     Date date = new Date();
@@ -66,7 +70,8 @@ public class DashboardFragment extends Fragment {
         View root = binding.getRoot();
 
         // Initialize database instance
-        db = Room.databaseBuilder(requireContext(), AppDatabase.class, "app-database").build();
+        db = Room.databaseBuilder(requireContext(), AppDatabase.class, "app-database")
+                .addMigrations(AppDatabase.MIGRATION_1_2).build();
         ideasDao = db.ideasDao();
         attachmentsDao = db.attachmentsDao();
 
@@ -133,8 +138,9 @@ public class DashboardFragment extends Fragment {
         return root;
     }
 
+    @SuppressLint("MissingPermission") // Checked by the commit button before calling record()
     private void record() {
-        if (mediaRecorder == null) {
+        if (speechRecorder == null) {
             // Set the current date-time for database entry
             date.setTime(System.currentTimeMillis());
 
@@ -147,28 +153,23 @@ public class DashboardFragment extends Fragment {
             audioFilePath = audioFile.getAbsolutePath();
             Log.d("Files", "Audio file created at " + audioFilePath);
 
-            // Prepare the media recorder
-            mediaRecorder = new MediaRecorder(requireContext());
-            mediaRecorder.setAudioSource(MediaRecorder.AudioSource.MIC);
-            mediaRecorder.setOutputFormat(MediaRecorder.OutputFormat.MPEG_4);
-            mediaRecorder.setAudioEncoder(MediaRecorder.AudioEncoder.AAC);
-            mediaRecorder.setAudioEncodingBitRate(16 * 44100);
-            mediaRecorder.setAudioSamplingRate(44100);
-            mediaRecorder.setOutputFile(audioFilePath);
+            // Record 16 kHz mono speech, the format the transcription model works on
+            speechRecorder = new SpeechRecorder(audioFilePath, WRITE_PCM_SIDECAR);
 
             try { // Start recording
-                mediaRecorder.prepare();
-                mediaRecorder.start();
+                speechRecorder.start();
                 Toast.makeText(getContext(), "Recording started", Toast.LENGTH_SHORT).show();
             } catch (IOException e) {
                 Log.e("Recording", "Recording failed", e);
+                speechRecorder.release();
+                speechRecorder.deleteFiles();
+                speechRecorder = null;
             }
         } else { // Stop recording
+            SpeechRecorder recorder = speechRecorder;
+            speechRecorder = null;
             try {
-                mediaRecorder.stop();
-                mediaRecorder.reset();
-                mediaRecorder.release();
-                mediaRecorder = null;
+                recorder.stop();
 
                 boolean isAudioFileSaved = cleanUp(audioFilePath); // Automatically delete the recording if it is too short
 
@@ -193,11 +194,9 @@ public class DashboardFragment extends Fragment {
                 // if no valid audio data has been received when stop() is called
                 // This happens if stop() is called immediately after start()
 
-                // Clean up the output file
-                mediaRecorder.reset();
-                mediaRecorder.release();
-                mediaRecorder = null;
-                new File(audioFilePath).delete();
+                // Clean up the output files
+                recorder.release();
+                recorder.deleteFiles();
 
                 Log.e("Recording", "Deleted recording", e);
             }
@@ -206,11 +205,8 @@ public class DashboardFragment extends Fragment {
     }
 
     private void startTranscriptionService(String audioFilePath, int id) {
-        // Start the transcription service
-        Intent intent = new Intent(requireContext(), TranscribeService.class);
-        intent.putExtra("audioFilePath", audioFilePath);
-        intent.putExtra("id", id);
-        requireContext().startService(intent);
+        // Queue the recording, the transcription service works through the queue in order
+        TranscribeService.enqueue(requireContext(), id, audioFilePath, TranscriptionJobs_table.PRIORITY_BACKGROUND);
     }
 
     private boolean cleanUp(String audioFilePath) {
@@ -219,6 +215,7 @@ public class DashboardFragment extends Fragment {
         // If recording is less than 600 milliseconds, delete the file
         if (durationLong < 600) {
             new File(audioFilePath).delete();
+            new File(SpeechRecorder.sidecarPath(audioFilePath)).delete();
             Log.d("Recording", "Deleted recording: " + audioFilePath);
             return false;
         } else {
@@ -343,11 +340,10 @@ public class DashboardFragment extends Fragment {
         super.onDestroyView();
 
         // TODO: Warn the user if they are about to lose their recording
-        // Release the media recorder if it is currently active
-        if (mediaRecorder != null) {
-            mediaRecorder.reset();
-            mediaRecorder.release();
-            mediaRecorder = null;
+        // Release the speech recorder if it is currently active
+        if (speechRecorder != null) {
+            speechRecorder.release();
+            speechRecorder = null;
         }
 
         // Release the database instance
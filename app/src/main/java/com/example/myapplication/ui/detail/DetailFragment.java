@@ -22,6 +22,7 @@ import androidx.activity.OnBackPressedCallback;
 import androidx.annotation.NonNull;
 import androidx.core.content.res.ResourcesCompat;
 import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
 import androidx.lifecycle.ViewModelProvider;
 import androidx.room.Room;
 
@@ -30,7 +31,9 @@ import com.example.myapplication.database.AppDatabase;
 import com.example.myapplication.database.AttachmentsDao;
 import com.example.myapplication.database.IdeasDao;
 import com.example.myapplication.database.Ideas_table;
+import com.example.myapplication.database.TranscriptionJobs_table;
 import com.example.myapplication.databinding.FragmentDetailBinding;
+import com.example.myapplication.recording.SpeechRecorder;
 import com.example.myapplication.summarizationService.SummarizeService;
 import com.example.myapplication.transcriptionService.TranscribeService;
 import com.example.myapplication.ui.home.HomeViewModel;
@@ -65,6 +68,7 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
     private IdeasDao ideasDao;
     private AttachmentsDao attachmentsDao;
     private Ideas_table thisIdea;
+    private boolean transcriptionQueued;
     private String transcriptFilePath, textFilePath, summaryFilePath, recordingFilePath;
     private String currentShownFile;
     private HashMap<String, String> fileCache = new HashMap<String, String>();
@@ -95,7 +99,8 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
         binding = FragmentDetailBinding.bind(view);
 
         // Initialize database and DAOs
-        db = Room.databaseBuilder(requireContext(), AppDatabase.class, "app-database").build();
+        db = Room.databaseBuilder(requireContext(), AppDatabase.class, "app-database")
+                .addMigrations(AppDatabase.MIGRATION_1_2).build();
         ideasDao = db.ideasDao();
         attachmentsDao = db.attachmentsDao();
 
@@ -122,6 +127,12 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
         summaryFilePath = thisIdea.summary_file_path;
         recordingFilePath = thisIdea.recording_file_path;
 
+        // A queued transcription of this idea is moved to the front and followed here
+        isTranscriptionServiceStarted = false;
+        if (transcriptionQueued) {
+            startTranscription();
+        }
+
         // Set up click listeners for the top app bar
         topAppBar.setNavigationOnClickListener(v -> handleNavigationWithUnsavedChanges());
 
@@ -202,20 +213,7 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
             // Check which button is selected to determine the service to start
             if (binding.segmentedButtons.getCheckedButtonId() == R.id.btn_transcript) {
                 Log.d("DetailFragment", "Transcribe button clicked, starting transcription service");
-
-                isTranscriptionServiceStarted = true;
-                binding.startServiceButton.setVisibility(View.GONE);
-                binding.EmptyFileText.setText(getResources().getString(R.string.transcription_in_progress_message));
-
-                // Bind to service first
-                Intent bindIntent = new Intent(requireContext(), TranscribeService.class);
-                requireContext().bindService(bindIntent, serviceConnectionTranscribe, Context.BIND_AUTO_CREATE);
-
-                // Start the transcription service
-                Intent intent = new Intent(requireContext(), TranscribeService.class);
-                intent.putExtra("audioFilePath", recordingFilePath);
-                intent.putExtra("id", thisIdea.id);
-                requireContext().startForegroundService(intent);
+                startTranscription();
             } else {
                 Log.d("DetailFragment", "Summarize button clicked, starting summarization service");
 
@@ -250,6 +248,21 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
         return view;
     }
 
+    private void startTranscription() {
+        isTranscriptionServiceStarted = true;
+        binding.startServiceButton.setVisibility(View.GONE);
+        binding.EmptyFileText.setText(getResources().getString(R.string.transcription_in_progress_message));
+
+        // Bind to service first
+        if (!isTranscribeServiceBound) {
+            Intent bindIntent = new Intent(requireContext(), TranscribeService.class);
+            requireContext().bindService(bindIntent, serviceConnectionTranscribe, Context.BIND_AUTO_CREATE);
+        }
+
+        // Queue the recording ahead of the others, the service drains the queue
+        TranscribeService.enqueue(requireContext(), thisIdea.id, recordingFilePath, TranscriptionJobs_table.PRIORITY_OPEN);
+    }
+
     @NonNull
     private Thread getDbThread() {
         final Handler handler = new Handler(Looper.getMainLooper());
@@ -261,6 +274,7 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
                 assert getArguments() != null;
                 // Fetch the idea from the database
                 thisIdea = ideasDao.getIdeaById(getArguments().getInt("idea_id"));
+                transcriptionQueued = db.transcriptionJobsDao().countForIdea(thisIdea.id, TranscriptionJobs_table.MAX_ATTEMPTS) > 0;
 
                 // Update UI on main thread
                 handler.post(this::updateUI);
@@ -529,7 +543,9 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
         // Delete files
         AtomicBoolean allFilesDeleted = new AtomicBoolean(true); // Track overall success
 
-        String[] filePaths = {transcriptFilePath, textFilePath, summaryFilePath, recordingFilePath};
+        // Recordings made by the speech recorder also have a raw PCM sidecar
+        String pcmFilePath = recordingFilePath != null ? SpeechRecorder.sidecarPath(recordingFilePath) : null;
+        String[] filePaths = {transcriptFilePath, textFilePath, summaryFilePath, recordingFilePath, pcmFilePath};
 
         // Create a thread pool (adjust the number of threads as needed)
         ExecutorService executorService = Executors.newFixedThreadPool(4);
@@ -558,6 +574,13 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
             }
         }
 
+        // Decoded audio kept for re-transcription
+        if (recordingFilePath != null && !recordingFilePath.isEmpty()) {
+            Context appContext = requireContext().getApplicationContext();
+            String audioFilePath = recordingFilePath;
+            executorService.execute(() -> TranscribeService.removeCachedAudio(appContext, audioFilePath));
+        }
+
         // Shutdown the executor service after all tasks are submitted
         executorService.shutdown();
 
@@ -681,13 +704,32 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
     };
 
     @Override
-    public void onTranscriptionProgress(String partialTranscript, float progress) {
+    public void onTranscriptionProgress(int ideaId, String partialTranscript, float progress) {
         Log.d("DetailFragmentCallback", "Transcription progress callback: " + progress);
     }
 
+    /**
+     * This function checks whether a callback of the transcription service, which comes from
+     * its worker thread, should update this fragment. The service also reports the other
+     * ideas in its queue, and a callback may arrive after the view has been destroyed.
+     *
+     * @param ideaId the idea the callback is about
+     * @return true if the view is alive and shows that idea
+     */
+    private boolean isShowingIdea(int ideaId) {
+        return isAdded() && binding != null && thisIdea != null && ideaId == thisIdea.id;
+    }
+
     @Override
-    public void onTranscriptionComplete(String transcriptFilePath) {
-        requireActivity().runOnUiThread(() -> {
+    public void onTranscriptionComplete(int ideaId, String transcriptFilePath) {
+        FragmentActivity activity = getActivity();
+        if (activity == null || !isShowingIdea(ideaId)) {
+            return;
+        }
+        activity.runOnUiThread(() -> {
+            if (!isShowingIdea(ideaId)) {
+                return;
+            }
             // Update the UI to show the transcribed text
             this.transcriptFilePath = transcriptFilePath;
 
@@ -737,12 +779,30 @@ public class DetailFragment extends Fragment implements TranscribeService.Transc
     }
 
     @Override
-    public void onTranscriptionError(String error) {
-        Log.e("DetailFragmentCallback", "Transcription error callback: " + error);
+    public void onTranscriptionError(int ideaId, String error) {
+        Log.e("DetailFragmentCallback", "Transcription error callback for idea " + ideaId + ": " + error);
+        FragmentActivity activity = getActivity();
+        if (activity == null || !isShowingIdea(ideaId)) {
+            return;
+        }
+        activity.runOnUiThread(() -> {
+            if (!isShowingIdea(ideaId)) {
+                return;
+            }
+            // Offer to try again
+            isTranscriptionServiceStarted = false;
+            binding.startServiceButton.setVisibility(View.VISIBLE);
+            binding.EmptyFileText.setText(getResources().getString(R.string.transcription_failed_message));
+        });
     }
 
     @Override
     public void onDestroyView() {
+        if (transcribeService != null) {
+            // The service outlives the view, stop it from calling back into this fragment
+            transcribeService.setTranscriptionCallback(null);
+            transcribeService = null;
+        }
         if (isTranscribeServiceBound) {
             try {
                 requireContext().unbindService(serviceConnectionTranscribe);
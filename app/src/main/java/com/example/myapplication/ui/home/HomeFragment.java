@@ -49,7 +49,8 @@ public class HomeFragment extends Fragment {
         View root = binding.getRoot();
 
         // Initialize database instance
-        db = Room.databaseBuilder(requireContext(), AppDatabase.class, "app-database").build();
+        db = Room.databaseBuilder(requireContext(), AppDatabase.class, "app-database")
+                .addMigrations(AppDatabase.MIGRATION_1_2).build();
         ideasDao = db.ideasDao();
 
         // Calculate the bottom margin for the capture bar, adjusting for the BottomNavigationView
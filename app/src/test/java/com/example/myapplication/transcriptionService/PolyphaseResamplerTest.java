@@ -0,0 +1,143 @@
+package com.example.myapplication.transcriptionService;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Compares the polyphase resampler with the linear one it replaces: streaming consistency,
+ * passband accuracy, aliasing of content above 8 kHz and throughput on 44.1 kHz input.
+ */
+public class PolyphaseResamplerTest {
+    private static final int TARGET_RATE = 16000;
+
+    @Test
+    public void process_blockSplitDoesNotChangeOutput() {
+        Random random = new Random(3);
+        float[] input = new float[50000];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextFloat() * 2f - 1f;
+        }
+
+        for (int rate : new int[]{44100, 48000, 22050, 8000, 44056}) {
+            float[] whole = resample(new PolyphaseResampler(rate, TARGET_RATE, Resampler.Quality.MEDIUM),
+                    input, input.length);
+            float[] blocks = resample(new PolyphaseResampler(rate, TARGET_RATE, Resampler.Quality.MEDIUM),
+                    input, 997);
+
+            // Same number of samples as the linear resampler, ceil(n * 16000 / rate)
+            long expected = ((long) input.length * TARGET_RATE + rate - 1) / rate;
+            assertEquals("length at " + rate, expected, whole.length);
+            assertArrayEquals(whole, blocks, 0f);
+        }
+    }
+
+    @Test
+    public void passbandTone_isPreserved() {
+        float[] input = tone(44100, 1000, 44100);
+        float[] output = resample(new PolyphaseResampler(44100, TARGET_RATE, Resampler.Quality.MEDIUM),
+                input, 4096);
+
+        // Away from the edges the output is the same tone sampled at 16 kHz
+        double maxError = 0;
+        for (int n = 1000; n < output.length - 1000; n++) {
+            double expected = 0.5 * Math.sin(2 * Math.PI * 1000 * n / (double) TARGET_RATE);
+            maxError = Math.max(maxError, Math.abs(output[n] - expected));
+        }
+        assertTrue("max error " + maxError, maxError < 1e-3);
+    }
+
+    @Test
+    public void passbandTone_isPreservedWithQuantizedPhases() {
+        // 44101 Hz needs 16000 phases, more than the table holds
+        float[] input = tone(44101, 1000, 44101);
+        float[] output = resample(new PolyphaseResampler(44101, TARGET_RATE, Resampler.Quality.MEDIUM),
+                input, 4096);
+
+        double maxError = 0;
+        for (int n = 1000; n < output.length - 1000; n++) {
+            double expected = 0.5 * Math.sin(2 * Math.PI * 1000 * n / (double) TARGET_RATE);
+            maxError = Math.max(maxError, Math.abs(output[n] - expected));
+        }
+        assertTrue("max error " + maxError, maxError < 1e-3);
+    }
+
+    @Test
+    public void toneAboveNyquist_isNotAliased() {
+        // 10 kHz cannot be represented at 16 kHz and folds to 6 kHz without filtering
+        float[] input = tone(44100, 10000, 44100);
+        double inputRms = rms(input, 0, input.length);
+
+        double linearDb = attenuationDb(inputRms,
+                resample(new LinearResampler(44100, TARGET_RATE), input, 4096));
+        double polyphaseDb = attenuationDb(inputRms,
+                resample(new PolyphaseResampler(44100, TARGET_RATE, Resampler.Quality.MEDIUM), input, 4096));
+        double highDb = attenuationDb(inputRms,
+                resample(new PolyphaseResampler(44100, TARGET_RATE, Resampler.Quality.HIGH), input, 4096));
+
+        System.out.printf("Alias attenuation at 10 kHz: linear %.1f dB, medium %.1f dB, high %.1f dB%n",
+                linearDb, polyphaseDb, highDb);
+        assertTrue("linear resampler should alias, got " + linearDb, linearDb < 20);
+        assertTrue("medium quality attenuation " + polyphaseDb, polyphaseDb > 60);
+        assertTrue("high quality attenuation " + highDb, highDb >= polyphaseDb);
+    }
+
+    @Test
+    public void throughput_benchmark() {
+        Random random = new Random(11);
+        float[] input = new float[44100 * 60];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = random.nextFloat() * 2f - 1f;
+        }
+
+        for (Resampler.Quality quality : Resampler.Quality.values()) {
+            // Warm up once, then time a minute of audio
+            resample(Resampler.create(44100, TARGET_RATE, quality), input, 8192);
+            long start = System.nanoTime();
+            float[] output = resample(Resampler.create(44100, TARGET_RATE, quality), input, 8192);
+            double seconds = (System.nanoTime() - start) / 1e9;
+
+            System.out.printf("%s: %.0fx realtime (%.1f ms for 60 s)%n",
+                    quality, 60.0 / seconds, seconds * 1000);
+            assertEquals(((long) input.length * TARGET_RATE + 44099) / 44100, output.length);
+        }
+    }
+
+    private static float[] resample(Resampler resampler, float[] input, int blockSize) {
+        float[] output = new float[resampler.maxOutput(input.length) + resampler.maxFlush()];
+        int written = 0;
+        for (int offset = 0; offset < input.length; offset += blockSize) {
+            int length = Math.min(blockSize, input.length - offset);
+            written += resampler.process(input, offset, length, output, written);
+        }
+        written += resampler.flush(output, written);
+
+        float[] result = new float[written];
+        System.arraycopy(output, 0, result, 0, written);
+        return result;
+    }
+
+    private static float[] tone(int rate, double frequency, int length) {
+        float[] signal = new float[length];
+        for (int i = 0; i < length; i++) {
+            signal[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / rate));
+        }
+        return signal;
+    }
+
+    private static double attenuationDb(double inputRms, float[] output) {
+        // Skip the edges where the filter sees the start and end of the signal
+        double outputRms = rms(output, 1000, output.length - 1000);
+        return 20 * Math.log10(inputRms / Math.max(outputRms, 1e-12));
+    }
+
+    private static double rms(float[] signal, int from, int to) {
+        double sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += (double) signal[i] * signal[i];
+        }
+        return Math.sqrt(sum / (to - from));
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.myapplication.transcriptionService;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the built-in real FFT against a straightforward double precision DFT.
+ */
+public class RealFFTTest {
+    private static final int N_FFT = 512;
+
+    @Test
+    public void powerSpectrum_matchesReferenceDft() {
+        Random random = new Random(42);
+        float[] frame = new float[N_FFT];
+        for (int i = 0; i < N_FFT; i++) {
+            frame[i] = (float) (random.nextGaussian() * 0.3);
+        }
+
+        float[] power = new float[N_FFT / 2 + 1];
+        new RealFFT(N_FFT).powerSpectrum(frame, power);
+
+        double[] expected = referencePower(frame);
+        for (int k = 0; k < expected.length; k++) {
+            double tolerance = 1e-4 * Math.max(1.0, expected[k]);
+            assertEquals("bin " + k, expected[k], power[k], tolerance);
+        }
+    }
+
+    @Test
+    public void powerSpectrum_pureToneLandsInItsBin() {
+        float[] frame = new float[N_FFT];
+        for (int i = 0; i < N_FFT; i++) {
+            frame[i] = (float) Math.cos(2.0 * Math.PI * 32 * i / N_FFT);
+        }
+
+        float[] power = new float[N_FFT / 2 + 1];
+        new RealFFT(N_FFT).powerSpectrum(frame, power);
+
+        // A unit cosine on an exact bin gives |X| = N / 2 there and nothing elsewhere
+        assertEquals((N_FFT / 2.0) * (N_FFT / 2.0), power[32], 1.0);
+        for (int k = 0; k < power.length; k++) {
+            if (k != 32) {
+                assertEquals("bin " + k, 0.0, power[k], 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void powerSpectrum_reusesScratchBetweenFrames() {
+        RealFFT fft = new RealFFT(N_FFT);
+        Random random = new Random(7);
+        float[] first = new float[N_FFT];
+        float[] second = new float[N_FFT];
+        for (int i = 0; i < N_FFT; i++) {
+            first[i] = random.nextFloat() - 0.5f;
+            second[i] = random.nextFloat() - 0.5f;
+        }
+
+        float[] power = new float[N_FFT / 2 + 1];
+        float[] again = new float[N_FFT / 2 + 1];
+        fft.powerSpectrum(second, power);
+        fft.powerSpectrum(first, again);
+        fft.powerSpectrum(second, again);
+
+        assertArrayEquals(power, again, 0f);
+    }
+
+    private static double[] referencePower(float[] frame) {
+        int n = frame.length;
+        double[] power = new double[n / 2 + 1];
+        for (int k = 0; k <= n / 2; k++) {
+            double re = 0;
+            double im = 0;
+            for (int t = 0; t < n; t++) {
+                double angle = -2.0 * Math.PI * k * t / n;
+                re += frame[t] * Math.cos(angle);
+                im += frame[t] * Math.sin(angle);
+            }
+            power[k] = re * re + im * im;
+        }
+        return power;
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.myapplication.transcriptionService;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that pushing audio in blocks of any size gives the same frames as computing the
+ * mel spectrogram of the whole signal at once.
+ */
+public class StreamingMelSpectrogramTest {
+    private static final MelFeatureConfig CONFIG = MelFeatureConfig.get(16000, 512, 160, 80);
+
+    private static float[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        float[] signal = new float[length];
+        for (int i = 0; i < length; i++) {
+            signal[i] = (float) (0.3 * random.nextGaussian());
+        }
+        return signal;
+    }
+
+    /**
+     * Streams the signal in blocks of the given sizes, cycling through them.
+     *
+     * @return the frames as [n_mels][frames], like MelSpectrogram.melSpectrogram
+     */
+    private static double[][] stream(StreamingMelSpectrogram streaming, float[] signal, int... blockSizes) {
+        double[][] mel = new double[CONFIG.getNMels()][1 + signal.length / CONFIG.getHopLength()];
+        int[] emitted = {0};
+        StreamingMelSpectrogram.FrameListener listener = (frameIndex, melFrame) -> {
+            assertEquals("frames out of order", emitted[0]++, frameIndex);
+            for (int i = 0; i < melFrame.length; i++) {
+                mel[i][frameIndex] = melFrame[i];
+            }
+        };
+
+        int offset = 0;
+        for (int block = 0; offset < signal.length; block++) {
+            int length = Math.min(blockSizes[block % blockSizes.length], signal.length - offset);
+            streaming.push(signal, offset, length, listener);
+            offset += length;
+        }
+        streaming.finish(listener);
+        assertEquals(mel[0].length, emitted[0]);
+        return mel;
+    }
+
+    private static void assertSameFrames(double[][] expected, double[][] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            for (int k = 0; k < expected[i].length; k++) {
+                double tolerance = 1e-6 * Math.max(1, Math.abs(expected[i][k]));
+                assertEquals("mel " + i + ", frame " + k, expected[i][k], actual[i][k], tolerance);
+            }
+        }
+    }
+
+    @Test
+    public void push_matchesWholeSignalForAnyBlockSize() {
+        // Not a multiple of the hop, so the last frame reflects a partial hop
+        float[] signal = noise(3 * 16000 + 77, 1);
+        double[][] expected = new MelSpectrogram(CONFIG).melSpectrogram(signal);
+
+        int[][] blockSizes = {{1}, {37}, {160}, {511}, {4096}, {signal.length}, {3, 1000, 17, 160, 2049}};
+        for (int[] sizes : blockSizes) {
+            assertSameFrames(expected, stream(new StreamingMelSpectrogram(CONFIG), signal, sizes));
+        }
+    }
+
+    @Test
+    public void finish_reflectsSignalShorterThanWindow() {
+        // Shorter than half a window, the reflections at both ends overlap
+        float[] signal = noise(200, 2);
+        double[][] expected = new MelSpectrogram(CONFIG).melSpectrogram(signal);
+        assertSameFrames(expected, stream(new StreamingMelSpectrogram(CONFIG), signal, 64));
+    }
+
+    @Test
+    public void reset_startsNewStream() {
+        StreamingMelSpectrogram streaming = new StreamingMelSpectrogram(CONFIG);
+        stream(streaming, noise(16000, 3), 1000);
+        streaming.reset();
+
+        float[] signal = noise(16000 + 300, 4);
+        double[][] expected = new MelSpectrogram(CONFIG).melSpectrogram(signal);
+        assertSameFrames(expected, stream(streaming, signal, 333));
+    }
+}
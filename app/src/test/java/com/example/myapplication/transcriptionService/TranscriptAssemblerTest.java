@@ -0,0 +1,109 @@
+package com.example.myapplication.transcriptionService;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the timestamp stitching of overlapping chunks and the text merge it falls back to.
+ */
+public class TranscriptAssemblerTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int CHUNK = 30 * SAMPLE_RATE;
+    private static final int OVERLAP = 5 * SAMPLE_RATE;
+    private static final int SOT = 50258;
+
+    // Test vocabulary: token t decodes to "w<t>"
+    private static final TranscriptAssembler.TextDecoder DECODER = (tokens, from, to) -> {
+        List<String> words = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            words.add("w" + tokens[i]);
+        }
+        return " " + String.join(" ", words);
+    };
+
+    private static int ts(double seconds) {
+        return TranscriptAssembler.TIMESTAMP_BEGIN + (int) Math.round(seconds * 50);
+    }
+
+    @Test
+    public void parseSegments_placesTextAtAbsoluteOffsets() {
+        int[] tokens = {SOT, ts(0), 1, 2, ts(2.4), ts(2.4), 3, ts(5), TranscriptAssembler.END_OF_TEXT, 9, 9};
+        List<TranscriptAssembler.Segment> segments =
+                TranscriptAssembler.parseSegments(tokens, tokens.length, 32000, CHUNK, SAMPLE_RATE, DECODER);
+
+        assertEquals(2, segments.size());
+        assertEquals(32000, segments.get(0).start);
+        assertEquals(32000 + 38400, segments.get(0).end);
+        assertEquals("w1 w2", segments.get(0).text);
+        assertEquals(32000 + 80000, segments.get(1).end);
+        assertEquals("w3", segments.get(1).text);
+    }
+
+    @Test
+    public void parseSegments_openSegmentEndsWithChunk() {
+        int[] tokens = {ts(28), 4, 5};
+        List<TranscriptAssembler.Segment> segments =
+                TranscriptAssembler.parseSegments(tokens, tokens.length, 0, CHUNK, SAMPLE_RATE, DECODER);
+        assertEquals(1, segments.size());
+        assertEquals(CHUNK, segments.get(0).end);
+    }
+
+    @Test
+    public void parseSegments_withoutTimestampsIsEmpty() {
+        int[] tokens = {SOT, 1, 2, 3, TranscriptAssembler.END_OF_TEXT};
+        assertTrue(TranscriptAssembler.parseSegments(tokens, tokens.length, 0, CHUNK, SAMPLE_RATE, DECODER).isEmpty());
+    }
+
+    @Test
+    public void add_cutsSharedAudioAtItsMidpoint() {
+        TranscriptAssembler assembler = new TranscriptAssembler(new TranscriptMerger());
+        // Second chunk starts at 25 s, the shared audio is divided at 27.5 s
+        int[] first = {ts(0), 1, ts(10), ts(10), 2, ts(26), ts(26), 3, ts(28), ts(28), 4};
+        int[] second = {ts(0), 2, ts(1), ts(1), 3, ts(3), ts(3), 4, 5, ts(10)};
+        add(assembler, first, 0, 0);
+        add(assembler, second, CHUNK - OVERLAP, OVERLAP);
+
+        assertEquals("w1 w2 w3 w4 w5", assembler.getText());
+        assertEquals(1, assembler.getStitchedBoundaries());
+        assertEquals(0, assembler.getMergedBoundaries());
+    }
+
+    @Test
+    public void add_fallsBackToTextMergeWithoutTimestamps() {
+        String previous = "so the first thing I want to do tomorrow is call the bank about the mortgage and then";
+        String next = "about the mortgage and then pick up the kids from school at three";
+        TranscriptAssembler assembler = new TranscriptAssembler(new TranscriptMerger());
+        assembler.add(0, 0, previous, Collections.emptyList());
+        assembler.add(CHUNK - OVERLAP, OVERLAP, next, Collections.emptyList());
+
+        assertEquals(previous + " " + new TranscriptMerger().merge(previous, next), assembler.getText());
+        assertEquals(1, assembler.getMergedBoundaries());
+    }
+
+    @Test
+    public void addSilence_keepsPendingSegments() {
+        TranscriptAssembler assembler = new TranscriptAssembler(new TranscriptMerger());
+        add(assembler, new int[]{ts(0), 1, ts(28), ts(28), 2}, 0, 0);
+        assembler.addSilence();
+        add(assembler, new int[]{ts(0), 2, ts(5)}, CHUNK - OVERLAP, OVERLAP);
+
+        // The silent chunk breaks the continuity, nothing is cut or merged
+        assertEquals("w1 w2 w2", assembler.getText());
+        assertEquals(0, assembler.getStitchedBoundaries() + assembler.getMergedBoundaries());
+    }
+
+    private static void add(TranscriptAssembler assembler, int[] tokens, long start, int overlap) {
+        List<TranscriptAssembler.Segment> segments =
+                TranscriptAssembler.parseSegments(tokens, tokens.length, start, CHUNK, SAMPLE_RATE, DECODER);
+        StringBuilder text = new StringBuilder();
+        for (TranscriptAssembler.Segment segment : segments) {
+            text.append(' ').append(segment.text);
+        }
+        assembler.add(start, overlap, text.toString().trim(), segments);
+    }
+}
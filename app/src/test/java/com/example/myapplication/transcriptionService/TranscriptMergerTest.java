@@ -0,0 +1,208 @@
+package com.example.myapplication.transcriptionService;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks the anchored overlap merge against the exhaustive fuzzy merge it replaces, which is
+ * kept here as the reference, and prints their speed.
+ */
+public class TranscriptMergerTest {
+    private static final String[][] SAMPLES = {
+            {"so the first thing I want to do tomorrow is call the bank about the mortgage and then",
+                    "about the mortgage and then pick up the kids from school at three"},
+            {"I think the idea for the app is a small inbox where you can just talk",
+                    "where you can just talk and it writes everything down for you later"},
+            {"we should also remember to buy milk eggs and some bread on the way",
+                    "milk, eggs and some bread on the way home and maybe a cake"},
+            {"remind me to email Sarah about the quarterly report before Friday",
+                    "the weather was nice so we went for a long walk by the river"},
+            {"the meeting is moved to Thursday at ten in the big conference room",
+                    "Thursday at 10 in the big conference room upstairs, bring the slides"},
+            {"one two three", "two three four five"},
+    };
+
+    @Test
+    public void merge_matchesLegacyOnSamples() {
+        TranscriptMerger merger = new TranscriptMerger();
+        for (String[] sample : SAMPLES) {
+            assertEquals(sample[1], legacyFindOverlapFuzzy(sample[0], sample[1]),
+                    merger.merge(sample[0], sample[1]));
+        }
+    }
+
+    @Test
+    public void merge_removesRepeatedWords() {
+        String merged = new TranscriptMerger().merge(SAMPLES[0][0], SAMPLES[0][1]);
+        assertEquals("pick up the kids from school at three", merged);
+    }
+
+    @Test
+    public void merge_matchesLegacyOnNoisyOverlaps() {
+        TranscriptMerger merger = new TranscriptMerger();
+        Random random = new Random(17);
+        for (int trial = 0; trial < 300; trial++) {
+            String[] pair = randomPair(random, 40 + random.nextInt(40));
+            assertEquals("trial " + trial, legacyFindOverlapFuzzy(pair[0], pair[1]),
+                    merger.merge(pair[0], pair[1]));
+        }
+    }
+
+    @Test
+    public void boundedLevenshtein_isExactWithinLimit() {
+        TranscriptMerger merger = new TranscriptMerger();
+        Random random = new Random(5);
+        for (int trial = 0; trial < 500; trial++) {
+            String a = randomString(random, random.nextInt(30));
+            String b = randomString(random, random.nextInt(30));
+            int exact = legacyLevenshteinDistance(a, b);
+            int limit = random.nextInt(20);
+            int bounded = merger.boundedLevenshtein(a, b, limit);
+            if (exact <= limit) {
+                assertEquals(a + " / " + b, exact, bounded);
+            } else {
+                assertTrue(a + " / " + b, bounded > limit);
+            }
+        }
+    }
+
+    @Test
+    public void merge_benchmark() {
+        Random random = new Random(23);
+        String[][] pairs = new String[50][];
+        for (int i = 0; i < pairs.length; i++) {
+            // Dense speech, a 30 s chunk holds around 90 words
+            pairs[i] = randomPair(random, 90);
+        }
+        TranscriptMerger merger = new TranscriptMerger();
+
+        // Warm up both paths before timing, checking that they agree on the long pairs
+        for (String[] pair : pairs) {
+            assertEquals(legacyFindOverlapFuzzy(pair[0], pair[1]), merger.merge(pair[0], pair[1]));
+        }
+
+        long start = System.nanoTime();
+        for (String[] pair : pairs) {
+            legacyFindOverlapFuzzy(pair[0], pair[1]);
+        }
+        long legacyNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (String[] pair : pairs) {
+            merger.merge(pair[0], pair[1]);
+        }
+        long mergerNanos = System.nanoTime() - start;
+
+        // Only printed, wall-clock times vary too much between machines to assert on
+        System.out.printf("Overlap merge of %d pairs: legacy %.1f ms, anchored %.2f ms (%.0fx)%n",
+                pairs.length, legacyNanos / 1e6, mergerNanos / 1e6, (double) legacyNanos / mergerNanos);
+    }
+
+    private static final String[] VOCABULARY = ("the a to and of I you it we that is in for on was "
+            + "meeting idea app call tomorrow think should maybe really just then about remember "
+            + "project email list buy home work time good new note write down later today").split(" ");
+
+    /**
+     * Two transcripts sharing a few words, with occasional substitutions, insertions and
+     * deletions in the shared part like the model produces on the overlapping audio.
+     */
+    private static String[] randomPair(Random random, int length) {
+        String[] words = new String[length];
+        for (int i = 0; i < length; i++) {
+            words[i] = VOCABULARY[random.nextInt(VOCABULARY.length)];
+        }
+        int overlap = random.nextInt(15);
+        StringBuilder first = new StringBuilder(String.join(" ", words));
+        StringBuilder second = new StringBuilder();
+        for (int i = length - overlap; i < length; i++) {
+            int edit = random.nextInt(20);
+            if (edit == 0) {
+                continue;
+            } else if (edit == 1) {
+                second.append(VOCABULARY[random.nextInt(VOCABULARY.length)]).append(' ');
+            } else if (edit == 2) {
+                second.append(words[i]).append(' ').append("uh").append(' ');
+                continue;
+            }
+            if (edit != 1) {
+                second.append(words[i]).append(' ');
+            }
+        }
+        for (int i = 0; i < length - overlap; i++) {
+            second.append(VOCABULARY[random.nextInt(VOCABULARY.length)]).append(' ');
+        }
+        return new String[]{first.toString(), second.toString().trim()};
+    }
+
+    private static String randomString(Random random, int length) {
+        char[] chars = new char[length];
+        for (int i = 0; i < length; i++) {
+            chars[i] = (char) ('a' + random.nextInt(4));
+        }
+        return new String(chars);
+    }
+
+    // Previous implementation from TranscribeService, used as the reference
+
+    private static String legacyFindOverlapFuzzy(String text1, String text2) {
+        String[] words1 = text1.split("\\s+");
+        String[] words2 = text2.split("\\s+");
+
+        int maxWindow = Math.min(words1.length, words2.length);
+        int bestOverlapLen = 0;
+        double bestRatio = 0.85; // threshold
+
+        for (int window = maxWindow; window > 3; window--) {
+            if (words1.length >= window && words2.length >= window) {
+                String text1End = String.join(" ",
+                        Arrays.copyOfRange(words1, words1.length - window, words1.length));
+                String text2Start = String.join(" ",
+                        Arrays.copyOfRange(words2, 0, window));
+
+                double ratio = legacyCalculateSimilarity(text1End.toLowerCase(), text2Start.toLowerCase());
+                if (ratio > bestRatio) {
+                    bestRatio = ratio;
+                    bestOverlapLen = window;
+                }
+            }
+        }
+
+        if (bestOverlapLen > 0) {
+            return String.join(" ",
+                    Arrays.copyOfRange(words2, bestOverlapLen, words2.length));
+        }
+        return text2;
+    }
+
+    private static double legacyCalculateSimilarity(String s1, String s2) {
+        int maxLength = Math.max(s1.length(), s2.length());
+        if (maxLength == 0) return 1.0;
+        return (double) (maxLength - legacyLevenshteinDistance(s1, s2)) / maxLength;
+    }
+
+    private static int legacyLevenshteinDistance(String s1, String s2) {
+        int[] prev = new int[s2.length() + 1];
+        int[] curr = new int[s2.length() + 1];
+
+        for (int j = 0; j <= s2.length(); j++) {
+            prev[j] = j;
+        }
+
+        for (int i = 1; i <= s1.length(); i++) {
+            curr[0] = i;
+            for (int j = 1; j <= s2.length(); j++) {
+                int cost = (s1.charAt(i - 1) == s2.charAt(j - 1)) ? 0 : 1;
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] temp = prev;
+            prev = curr;
+            curr = temp;
+        }
+
+        return prev[s2.length()];
+    }
+}
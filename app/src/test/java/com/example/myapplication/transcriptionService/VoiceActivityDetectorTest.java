@@ -0,0 +1,97 @@
+package com.example.myapplication.transcriptionService;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that the noise floor tracked across chunks tells room noise from speech, also after
+ * a stretch of digital silence.
+ */
+public class VoiceActivityDetectorTest {
+    private static final int SAMPLE_RATE = 16000;
+    private static final int HOP_LENGTH = 160;
+
+    // White noise at about -40 dB per frame
+    private static float[] noise(int length, long seed) {
+        Random random = new Random(seed);
+        float[] signal = new float[length];
+        for (int i = 0; i < length; i++) {
+            signal[i] = (float) (0.01 * random.nextGaussian());
+        }
+        return signal;
+    }
+
+    // The noise with a loud voiced stretch of one second in the middle
+    private static float[] speech(int length, long seed) {
+        float[] signal = noise(length, seed);
+        int start = (length - SAMPLE_RATE) / 2;
+        for (int i = start; i < start + SAMPLE_RATE; i++) {
+            signal[i] += (float) (0.3 * Math.sin(2 * Math.PI * 200 * i / SAMPLE_RATE));
+        }
+        return signal;
+    }
+
+    private static boolean containsSpeech(VoiceActivityDetector vad, float[] audio) {
+        return vad.containsSpeech(audio, 0, audio.length);
+    }
+
+    @Test
+    public void containsSpeech_noiseAfterDigitalSilenceIsNotSpeech() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(HOP_LENGTH);
+        assertFalse(containsSpeech(vad, new float[5 * SAMPLE_RATE]));
+        assertFalse(containsSpeech(vad, noise(5 * SAMPLE_RATE, 1)));
+        assertTrue(containsSpeech(vad, speech(5 * SAMPLE_RATE, 2)));
+        assertFalse(containsSpeech(vad, noise(5 * SAMPLE_RATE, 3)));
+    }
+
+    @Test
+    public void containsSpeech_noiseAfterDigitalSilenceMatchesFreshDetector() {
+        float[] noise = noise(5 * SAMPLE_RATE, 4);
+        boolean fresh = containsSpeech(new VoiceActivityDetector(HOP_LENGTH), noise);
+
+        // Digital silence with a little noise in it, like padding around a quiet recording
+        float[] padded = new float[5 * SAMPLE_RATE];
+        System.arraycopy(noise(SAMPLE_RATE / 2, 5), 0, padded, 0, SAMPLE_RATE / 2);
+        VoiceActivityDetector vad = new VoiceActivityDetector(HOP_LENGTH);
+        containsSpeech(vad, padded);
+        assertEquals(fresh, containsSpeech(vad, noise));
+        assertFalse(fresh);
+    }
+
+    @Test
+    public void containsSpeech_floorRisesWithLouderRoom() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(HOP_LENGTH);
+        // Very quiet room first
+        float[] quiet = noise(5 * SAMPLE_RATE, 6);
+        for (int i = 0; i < quiet.length; i++) {
+            quiet[i] *= 0.01f;
+        }
+        assertFalse(containsSpeech(vad, quiet));
+
+        // The room gets 40 dB louder, after a few chunks its noise is no longer speech
+        boolean speech = true;
+        for (int chunk = 0; chunk < 20 && speech; chunk++) {
+            speech = containsSpeech(vad, noise(5 * SAMPLE_RATE, 7 + chunk));
+        }
+        assertFalse(speech);
+        assertTrue(containsSpeech(vad, speech(5 * SAMPLE_RATE, 30)));
+    }
+
+    @Test
+    public void findPause_findsGapBetweenSpeech() {
+        VoiceActivityDetector vad = new VoiceActivityDetector(HOP_LENGTH);
+        float[] audio = noise(4 * SAMPLE_RATE, 8);
+        for (int i = 0; i < audio.length; i++) {
+            boolean gap = i >= 2 * SAMPLE_RATE && i < 2 * SAMPLE_RATE + SAMPLE_RATE / 2;
+            if (!gap) {
+                audio[i] += (float) (0.3 * Math.sin(2 * Math.PI * 200 * i / SAMPLE_RATE));
+            }
+        }
+        containsSpeech(vad, new float[SAMPLE_RATE]);
+        int pause = vad.findPause(audio, 0, audio.length);
+        assertTrue("pause at " + pause, pause >= 2 * SAMPLE_RATE && pause < 2 * SAMPLE_RATE + SAMPLE_RATE / 2);
+    }
+}
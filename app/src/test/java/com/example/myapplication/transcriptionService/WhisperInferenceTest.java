@@ -0,0 +1,88 @@
+package com.example.myapplication.transcriptionService;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that running the model through WhisperInference copies the right tokens and does
+ * not allocate once warmed up.
+ */
+public class WhisperInferenceTest {
+    private static final int INPUT_BYTES = 4 * 80 * 3000;
+    private static final int MAX_TOKENS = 448;
+    private static final int SPOKEN_TOKENS = 100;
+
+    // Writes the output the way the interpreter does: prompt, text, timestamps, then <|endoftext|> padding
+    private static final WhisperInference.Runner FAKE_MODEL = (inputs, outputs) -> {
+        ByteBuffer output = (ByteBuffer) outputs.get(0);
+        for (int i = 0; i < MAX_TOKENS; i++) {
+            output.putInt(i < SPOKEN_TOKENS ? token(i) : WhisperInference.END_OF_TEXT);
+        }
+    };
+
+    private static int token(int i) {
+        if (i == 0) {
+            return 50258;
+        }
+        return i % 10 == 0 ? TranscriptAssembler.TIMESTAMP_BEGIN + i : i * 37;
+    }
+
+    @Test
+    public void run_copiesTokensUpToEndOfText() {
+        WhisperInference inference = new WhisperInference(FAKE_MODEL, INPUT_BYTES, MAX_TOKENS, 2);
+        int[] tokens = new int[MAX_TOKENS];
+        int count = inference.run(inference.getInputBuffers()[1], tokens);
+
+        assertEquals(SPOKEN_TOKENS, count);
+        for (int i = 0; i < count; i++) {
+            assertEquals(token(i), tokens[i]);
+        }
+        assertEquals(1, inference.getRuns());
+    }
+
+    @Test
+    public void textTokens_dropsSpecialAndTimestampTokens() {
+        int[] tokens = {50258, 50359, TranscriptAssembler.TIMESTAMP_BEGIN, 11, 12, TranscriptAssembler.TIMESTAMP_BEGIN + 50, 13};
+        int[] text = new int[tokens.length];
+        int count = WhisperInference.textTokens(tokens, tokens.length, text);
+
+        assertEquals(3, count);
+        assertEquals(11, text[0]);
+        assertEquals(12, text[1]);
+        assertEquals(13, text[2]);
+    }
+
+    @Test
+    public void run_doesNotAllocateOnceWarm() {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        WhisperInference inference = new WhisperInference(FAKE_MODEL, INPUT_BYTES, MAX_TOKENS, 2);
+        int[] tokens = new int[MAX_TOKENS];
+        int[] text = new int[MAX_TOKENS];
+
+        int runs = 2000;
+        // The first runs warm up the code, their allocations are not counted
+        runChunks(inference, tokens, text, runs);
+        long before = threads.getThreadAllocatedBytes(thread);
+        int textCount = runChunks(inference, tokens, text, runs);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(textCount > 0);
+        // Leaves room for the counter itself, a single array per run would exceed it
+        assertTrue("allocated " + allocated + " bytes in " + runs + " runs", allocated < 1024);
+    }
+
+    private static int runChunks(WhisperInference inference, int[] tokens, int[] text, int runs) {
+        int textCount = 0;
+        for (int i = 0; i < runs; i++) {
+            int count = inference.run(inference.getInputBuffers()[i % 2], tokens);
+            textCount += WhisperInference.textTokens(tokens, count, text);
+        }
+        return textCount;
+    }
+}
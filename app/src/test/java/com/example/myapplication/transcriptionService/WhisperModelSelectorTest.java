@@ -0,0 +1,89 @@
+package com.example.myapplication.transcriptionService;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks which Whisper variant is picked for short and long recordings and constrained
+ * devices.
+ */
+public class WhisperModelSelectorTest {
+    private static final WhisperModelSpec TINY_INT8 = spec("tiny-int8", 0, 0.6);
+    private static final WhisperModelSpec TINY = spec("tiny", 1, 1.0);
+    private static final WhisperModelSpec BASE = spec("base", 3, 2.4);
+    private static final List<WhisperModelSpec> MODELS = Arrays.asList(TINY_INT8, TINY, BASE);
+
+    private static WhisperModelSpec spec(String name, int quality, double relativeCost) {
+        return new WhisperModelSpec(name, "whisper-" + name + ".tflite", quality, relativeCost,
+                new int[]{1, 80, 3000}, "float32", new int[]{1, 448}, "int32");
+    }
+
+    // Measured times per chunk, missing variants are unmeasured
+    private static WhisperModelSelector.ChunkTimes measured(Object... specsAndMillis) {
+        Map<WhisperModelSpec, Long> times = new HashMap<>();
+        for (int i = 0; i < specsAndMillis.length; i += 2) {
+            times.put((WhisperModelSpec) specsAndMillis[i], ((Number) specsAndMillis[i + 1]).longValue());
+        }
+        return spec -> times.getOrDefault(spec, -1L);
+    }
+
+    private static WhisperModelSelector.Conditions recording(float seconds) {
+        return new WhisperModelSelector.Conditions(seconds, Math.max(1, (int) Math.ceil((seconds - 5) / 25)),
+                80, false, false, 0);
+    }
+
+    private static WhisperModelSpec select(WhisperModelSelector.ChunkTimes times,
+                                           WhisperModelSelector.Conditions conditions) {
+        return WhisperModelSelector.select(MODELS, TINY, times, conditions).getSpec();
+    }
+
+    @Test
+    public void select_shortNoteGetsMostAccurateVariant() {
+        WhisperModelSelector.ChunkTimes times = measured(TINY_INT8, 900, TINY, 1500, BASE, 3600);
+        assertSame(BASE, select(times, recording(20)));
+    }
+
+    @Test
+    public void select_longRecordingGetsVariantWithinBudget() {
+        WhisperModelSelector.ChunkTimes times = measured(TINY_INT8, 900, TINY, 1500, BASE, 3600);
+        // One hour: 144 chunks, 900 s budget, base would take 518 s
+        assertSame(BASE, select(times, recording(3600)));
+        // On a slower device base and tiny no longer fit
+        times = measured(TINY_INT8, 5000, TINY, 8000, BASE, 20000);
+        assertSame(TINY_INT8, select(times, recording(3600)));
+        times = measured(TINY_INT8, 4000, TINY, 6000, BASE, 20000);
+        assertSame(TINY, select(times, recording(3600)));
+    }
+
+    @Test
+    public void select_constrainedDeviceGetsFastestVariant() {
+        WhisperModelSelector.ChunkTimes times = measured(TINY_INT8, 900, TINY, 1500, BASE, 3600);
+        assertSame(TINY_INT8, select(times, new WhisperModelSelector.Conditions(20, 1, 15, false, false, 0)));
+        assertSame(TINY_INT8, select(times, new WhisperModelSelector.Conditions(20, 1, 80, true, true, 0)));
+        assertSame(TINY_INT8, select(times,
+                new WhisperModelSelector.Conditions(20, 1, 80, true, false, WhisperModelSelector.THERMAL_SEVERE)));
+        // Charging lifts the battery limit
+        assertSame(BASE, select(times, new WhisperModelSelector.Conditions(20, 1, 15, true, false, 0)));
+    }
+
+    @Test
+    public void select_estimatesUnmeasuredVariantsFromMeasuredOne() {
+        // Base is estimated at 2.4 times tiny: 7.2 s per chunk, 43 s for a 2.5 minute note
+        // with a 37.5 s budget
+        assertSame(TINY, select(measured(TINY, 3000), recording(150)));
+        assertSame(BASE, select(measured(TINY, 1000), recording(150)));
+    }
+
+    @Test
+    public void select_fallsBackWithoutMeasurements() {
+        WhisperModelSelector.Selection selection =
+                WhisperModelSelector.select(MODELS, TINY, measured(), recording(600));
+        assertSame(TINY, selection.getSpec());
+    }
+}